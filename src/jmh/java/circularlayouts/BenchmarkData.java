@@ -0,0 +1,69 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts;
+
+import circularlayouts.layout.DenseMatrix;
+import circularlayouts.layout.LayoutParameters;
+import circularlayouts.layout.Matrix;
+import circularlayouts.layout.RatioLayoutBuilder;
+import circularlayouts.tracks.Track;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Reproducible input for the benchmarks.
+ *
+ * @author Nils Hoffmann
+ */
+public final class BenchmarkData {
+
+    public static final long SEED = 891236l;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates a square matrix with random values. Cells that are not filled
+     * hold NaN, which the layout treats as "no link".
+     *
+     * @param size the number of rows and columns
+     * @param density the fraction of filled cells
+     * @return the matrix
+     */
+    public static Matrix createMatrix(int size, double density) {
+        Random rg = new Random(SEED);
+        double[][] data = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                data[i][j] = rg.nextDouble() < density ? 5000000 * rg.nextDouble() : Double.NaN;
+            }
+        }
+        return new DenseMatrix(data);
+    }
+
+    /**
+     * Lays out the matrix with the default parameters.
+     *
+     * @param matrix the matrix
+     * @return the tracks by name, in paint order
+     */
+    public static Map<String, Track<? extends IDrawable>> createTracks(Matrix matrix) {
+        Map<String, Track<? extends IDrawable>> shapes = new LinkedHashMap<String, Track<? extends IDrawable>>();
+        new RatioLayoutBuilder(matrix).addTracks(new LayoutParameters(), shapes);
+        return shapes;
+    }
+}
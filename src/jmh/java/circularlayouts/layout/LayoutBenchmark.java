@@ -0,0 +1,71 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.layout;
+
+import circularlayouts.BenchmarkData;
+import circularlayouts.IDrawable;
+import circularlayouts.tracks.Track;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link RatioLayoutBuilder#addTracks(LayoutParameters, Map)}
+ * across matrix sizes and densities. The marginals are part of the
+ * measurement, as they are computed for every new builder.
+ *
+ * @author Nils Hoffmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LayoutBenchmark {
+
+    @Param({"16", "64", "256"})
+    public int size;
+
+    @Param({"0.1", "0.5", "1.0"})
+    public double density;
+
+    private Matrix matrix;
+    private final LayoutParameters parameters = new LayoutParameters();
+
+    @Setup
+    public void setup() {
+        matrix = BenchmarkData.createMatrix(size, density);
+    }
+
+    @Benchmark
+    public Map<String, Track<? extends IDrawable>> addTracks() {
+        Map<String, Track<? extends IDrawable>> shapes = new LinkedHashMap<String, Track<? extends IDrawable>>();
+        new RatioLayoutBuilder(matrix).addTracks(parameters, shapes);
+        return shapes;
+    }
+}
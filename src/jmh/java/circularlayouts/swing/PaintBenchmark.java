@@ -0,0 +1,93 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.swing;
+
+import circularlayouts.BenchmarkData;
+import circularlayouts.layout.RatioLayoutBuilder;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link VolatilePaintingComponent#paintContent(Graphics2D)}, the
+ * rasterization of all tracks without any layer caching, into a headless
+ * image of the default panel size. The graphics is set up like the panel
+ * sets it up.
+ *
+ * @author Nils Hoffmann
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    @Param({"16", "64", "256"})
+    public int size;
+
+    @Param({"0.5"})
+    public double density;
+
+    @Param({"true", "false"})
+    public boolean antialiasing;
+
+    private final VolatilePaintingComponent component = new VolatilePaintingComponent();
+    private BufferedImage image;
+    private Graphics2D g2;
+
+    @Setup
+    public void setup() {
+        component.addAll(BenchmarkData.createTracks(BenchmarkData.createMatrix(size, density)).values());
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        g2 = image.createGraphics();
+        ChartSettings settings = new ChartSettings();
+        settings.setAntialiasing(antialiasing ? ChartSettings.Antialiasing.ON : ChartSettings.Antialiasing.OFF);
+        settings.applySettings(g2);
+        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.75f));
+        g2.setStroke(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2.transform(RatioLayoutBuilder.createViewportTransform(0, 0, WIDTH, HEIGHT));
+    }
+
+    @TearDown
+    public void tearDown() {
+        g2.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paintContent() {
+        component.paintContent(g2);
+        return image;
+    }
+}
@@ -0,0 +1,96 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.tracks;
+
+import circularlayouts.BenchmarkData;
+import circularlayouts.layout.RatioLayoutBuilder;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the creation of the segment and ribbon shapes. Segments build
+ * their outline lazily, so their outline is also measured by walking its
+ * path once, as painting does.
+ *
+ * @author Nils Hoffmann
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GeometryBenchmark {
+
+    private static final int ANGLES = 1024;
+    private static final double RADIUS = RatioLayoutBuilder.LAYOUT_RADIUS;
+    private final double[] angles = new double[4 * ANGLES];
+    private final double[] coords = new double[6];
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random rg = new Random(BenchmarkData.SEED);
+        for (int i = 0; i < angles.length; i += 2) {
+            double start = rg.nextDouble();
+            angles[i] = start;
+            angles[i + 1] = start + 0.05d * rg.nextDouble();
+        }
+    }
+
+    private int nextAngles() {
+        next = (next + 4) % angles.length;
+        return next;
+    }
+
+    @Benchmark
+    public Shape createCurvedSegment() {
+        int i = nextAngles();
+        return RatioLayoutBuilder.createCurvedSegment(angles[i], angles[i + 1], RADIUS - 45, RADIUS, 0, 0);
+    }
+
+    @Benchmark
+    public int createCurvedSegmentOutline() {
+        int i = nextAngles();
+        return walk(RatioLayoutBuilder.createCurvedSegment(angles[i], angles[i + 1], RADIUS - 45, RADIUS, 0, 0));
+    }
+
+    @Benchmark
+    public Shape createConnectionSegmentShape() {
+        int i = nextAngles();
+        return Ribbon.createConnectionSegmentShape(RADIUS - 45, RADIUS - 50, 0, 0, angles[i], angles[i + 1], angles[i + 2], angles[i + 3]);
+    }
+
+    private int walk(Shape s) {
+        int segments = 0;
+        for (PathIterator pi = s.getPathIterator(null); !pi.isDone(); pi.next()) {
+            segments += pi.currentSegment(coords);
+        }
+        return segments;
+    }
+}
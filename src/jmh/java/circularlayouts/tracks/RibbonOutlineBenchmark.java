@@ -0,0 +1,131 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.tracks;
+
+import circularlayouts.BenchmarkData;
+import circularlayouts.layout.RatioLayoutBuilder;
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the ribbon outline as a direct {@link Path2D.Float} with the same
+ * outline wrapped in an {@link Area}, as ribbons were built before. Creating,
+ * walking and hit testing are measured separately. Run with {@code -prof gc}
+ * to see the bytes allocated per outline in {@code gc.alloc.rate.norm}.
+ *
+ * @author Nils Hoffmann
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RibbonOutlineBenchmark {
+
+    private static final int RIBBONS = 1024;
+    private static final double RADIUS = RatioLayoutBuilder.LAYOUT_RADIUS;
+    private final double[] angles = new double[4 * RIBBONS];
+    private final Path2D.Float[] paths = new Path2D.Float[RIBBONS];
+    private final Area[] areas = new Area[RIBBONS];
+    //a point inside of the circle per ribbon, about half of them hit
+    private final double[] points = new double[2 * RIBBONS];
+    private final double[] coords = new double[6];
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random rg = new Random(BenchmarkData.SEED);
+        for (int i = 0; i < RIBBONS; i++) {
+            double source = rg.nextDouble();
+            double target = rg.nextDouble();
+            angles[4 * i] = source;
+            angles[4 * i + 1] = source + 0.05d * rg.nextDouble();
+            angles[4 * i + 2] = target;
+            angles[4 * i + 3] = target + 0.05d * rg.nextDouble();
+            paths[i] = createPath(i);
+            areas[i] = new Area(paths[i]);
+            //the middle of the source arc, moved towards the center
+            double a = (angles[4 * i] + angles[4 * i + 1]) * Math.PI;
+            double r = (RADIUS - 50) * (0.5d + 0.5d * rg.nextDouble());
+            points[2 * i] = r * Math.cos(a);
+            points[2 * i + 1] = -r * Math.sin(a);
+        }
+    }
+
+    private int nextRibbon() {
+        next = (next + 1) % RIBBONS;
+        return next;
+    }
+
+    private Path2D.Float createPath(int i) {
+        return Ribbon.createConnectionSegmentShape(RADIUS - 45, RADIUS - 50, 0, 0, angles[4 * i], angles[4 * i + 1], angles[4 * i + 2], angles[4 * i + 3]);
+    }
+
+    @Benchmark
+    public Shape createPath() {
+        return createPath(nextRibbon());
+    }
+
+    @Benchmark
+    public Shape createArea() {
+        return new Area(createPath(nextRibbon()));
+    }
+
+    @Benchmark
+    public int walkPath() {
+        return walk(paths[nextRibbon()]);
+    }
+
+    @Benchmark
+    public int walkArea() {
+        return walk(areas[nextRibbon()]);
+    }
+
+    @Benchmark
+    public boolean containsPath() {
+        int i = nextRibbon();
+        return paths[i].contains(points[2 * i], points[2 * i + 1]);
+    }
+
+    @Benchmark
+    public boolean containsArea() {
+        int i = nextRibbon();
+        return areas[i].contains(points[2 * i], points[2 * i + 1]);
+    }
+
+    private int walk(Shape s) {
+        int segments = 0;
+        for (PathIterator pi = s.getPathIterator(null); !pi.isDone(); pi.next()) {
+            segments += pi.currentSegment(coords);
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,110 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.tracks;
+
+import circularlayouts.BenchmarkData;
+import circularlayouts.IDrawable;
+import circularlayouts.layout.PolarHitIndex;
+import circularlayouts.layout.RatioLayoutBuilder;
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures hit testing with {@link Track#select(Point2D)} on the segment
+ * and the ribbon track, at random points within the outer radius of the
+ * layout. Most points hit nothing, which is the common case while the mouse
+ * moves over the panel. The indexed variants select through the
+ * {@link PolarHitIndex} of the track, as the panel does; the largest size
+ * has about 100k ribbons.
+ *
+ * @author Nils Hoffmann
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SelectBenchmark {
+
+    private static final int POINTS = 1024;
+
+    @Param({"16", "64", "256", "634"})
+    public int size;
+
+    @Param({"0.5"})
+    public double density;
+
+    private Track<? extends IDrawable> segments;
+    private Track<? extends IDrawable> ribbons;
+    private PolarHitIndex<IDrawable> segmentIndex;
+    private PolarHitIndex<IDrawable> ribbonIndex;
+    private final Point2D[] points = new Point2D[POINTS];
+    private int next;
+
+    @Setup
+    public void setup() {
+        Map<String, Track<? extends IDrawable>> tracks = BenchmarkData.createTracks(BenchmarkData.createMatrix(size, density));
+        segments = tracks.get("Track 1");
+        ribbons = tracks.get("Track 2");
+        segmentIndex = new PolarHitIndex<IDrawable>(segments.getChildren(), 0.0d, 0.0d);
+        ribbonIndex = new PolarHitIndex<IDrawable>(ribbons.getChildren(), 0.0d, 0.0d);
+        Random rg = new Random(BenchmarkData.SEED);
+        double r = RatioLayoutBuilder.LAYOUT_RADIUS;
+        for (int i = 0; i < POINTS; i++) {
+            points[i] = new Point2D.Double(r * (2 * rg.nextDouble() - 1), r * (2 * rg.nextDouble() - 1));
+        }
+    }
+
+    private Point2D nextPoint() {
+        next = (next + 1) % POINTS;
+        return points[next];
+    }
+
+    @Benchmark
+    public Shape selectSegment() {
+        return segments.select(nextPoint());
+    }
+
+    @Benchmark
+    public Shape selectRibbon() {
+        return ribbons.select(nextPoint());
+    }
+
+    @Benchmark
+    public Shape selectSegmentIndexed() {
+        return segmentIndex.select(nextPoint());
+    }
+
+    @Benchmark
+    public Shape selectRibbonIndexed() {
+        return ribbonIndex.select(nextPoint());
+    }
+}
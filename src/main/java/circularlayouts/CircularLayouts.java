@@ -16,6 +16,7 @@
 package circularlayouts;
 
 import circularlayouts.swing.CircularLayoutComponent;
+import circularlayouts.swing.RenderStatistics;
 import java.awt.BorderLayout;
 import java.awt.BufferCapabilities;
 import java.awt.GraphicsConfiguration;
@@ -24,6 +25,9 @@ import java.awt.GraphicsEnvironment;
 import java.awt.ImageCapabilities;
 import java.awt.image.ColorModel;
 import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
 
@@ -66,6 +70,15 @@ public class CircularLayouts {
                 jf.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
                 jf.setLayout(new BorderLayout());
                 CircularLayoutComponent panel = new CircularLayoutComponent();
+                if (Boolean.getBoolean("circularlayouts.statistics")) {
+                    RenderStatistics statistics = new RenderStatistics();
+                    try {
+                        statistics.register(RenderStatistics.DEFAULT_NAME);
+                    } catch (JMException ex) {
+                        Logger.getLogger(CircularLayouts.class.getName()).log(Level.SEVERE, "Render statistics are not published", ex);
+                    }
+                    panel.setRenderStatisticsListener(statistics);
+                }
                 panel.setData(createDistanceMatrix());
                 jf.add(panel, BorderLayout.CENTER);
                 jf.setLocationRelativeTo(null);
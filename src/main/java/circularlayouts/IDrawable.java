@@ -18,8 +18,8 @@ package circularlayouts;
 import java.awt.Graphics2D;
 import java.awt.Paint;
 import java.awt.Shape;
-import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 
 /**
  *
@@ -27,6 +27,12 @@ import java.awt.geom.Point2D;
  */
 public interface IDrawable<T> extends Shape {
 
+    /**
+     * Paints the drawable. Drawing does not change the state of the drawable,
+     * so it may be drawn into several tiles concurrently.
+     *
+     * @param g2 the graphics
+     */
     public void draw(Graphics2D g2);
 
     public void setFill(Paint color);
@@ -39,6 +45,28 @@ public interface IDrawable<T> extends Shape {
 
     public boolean isDirty();
 
-    public Shape select(AffineTransform at, Point2D point);
+    /**
+     * @return the region, in the coordinates of this drawable, that has to be
+     * painted again since the last call to {@link #clearDamage()}, or null if
+     * nothing changed
+     */
+    public Rectangle2D getDamage();
+
+    /**
+     * Marks the drawable as painted. Painters call this once on their own
+     * thread after the drawable has been drawn completely. Painters check
+     * {@link #isDirty()} or {@link #getDamage()} before drawing, damage
+     * reported after that may be kept for the next paint.
+     */
+    public void clearDamage();
+
+    /**
+     * Tests whether the given point selects this drawable.
+     *
+     * @param point the point in the coordinates of this drawable, e.g. a
+     * device point mapped once through the inverse of the view transform
+     * @return the selected shape or null
+     */
+    public Shape select(Point2D point);
 
 }
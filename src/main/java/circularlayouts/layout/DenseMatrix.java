@@ -0,0 +1,107 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.layout;
+
+/**
+ * {@link Matrix} backed by a rectangular {@code double[][]}. Every cell is an
+ * entry, empty cells hold NaN.
+ *
+ * @author Nils Hoffmann
+ */
+public class DenseMatrix implements Matrix {
+
+    private final double[][] data;
+    private final int rows;
+    private final int columns;
+
+    public DenseMatrix(double[][] data) {
+        this.data = data;
+        this.rows = data.length;
+        this.columns = rows == 0 ? 0 : data[0].length;
+    }
+
+    public double[][] getData() {
+        return data;
+    }
+
+    @Override
+    public int getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getColumns() {
+        return columns;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        return data[row][column];
+    }
+
+    @Override
+    public int getEntryCount() {
+        return rows * columns;
+    }
+
+    @Override
+    public int getRowStart(int row) {
+        return row * columns;
+    }
+
+    @Override
+    public int getRowEnd(int row) {
+        return (row + 1) * columns;
+    }
+
+    @Override
+    public int getColumnStart(int column) {
+        return column * rows;
+    }
+
+    @Override
+    public int getColumnEnd(int column) {
+        return (column + 1) * rows;
+    }
+
+    @Override
+    public int getColumnEntry(int position) {
+        return (position % rows) * columns + (position / rows);
+    }
+
+    @Override
+    public int getRow(int entry) {
+        return entry / columns;
+    }
+
+    @Override
+    public int getColumn(int entry) {
+        return entry % columns;
+    }
+
+    @Override
+    public double getValue(int entry) {
+        return data[entry / columns][entry % columns];
+    }
+
+    @Override
+    public int getEntry(int row, int column) {
+        if (Double.isNaN(data[row][column])) {
+            return -1;
+        }
+        return row * columns + column;
+    }
+}
@@ -0,0 +1,117 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.layout;
+
+/**
+ * The parameters of a chord layout as passed to
+ * {@link RatioLayoutBuilder#addTracks(double, double, double, double, double, java.util.Map)}.
+ * Sizes and margins are given in layout space, the angles in fractions of a
+ * full circle.
+ *
+ * @author Nils Hoffmann
+ */
+public class LayoutParameters {
+
+    private double segmentAngle = 0.0d;
+    private double segmentSize = 45.0d;
+    private double targetMargin = 5.0d;
+    private double segmentMargin = 0.05d;
+    private double sourceMargin = 0.0d;
+
+    public LayoutParameters() {
+    }
+
+    public LayoutParameters(LayoutParameters parameters) {
+        this.segmentAngle = parameters.segmentAngle;
+        this.segmentSize = parameters.segmentSize;
+        this.targetMargin = parameters.targetMargin;
+        this.segmentMargin = parameters.segmentMargin;
+        this.sourceMargin = parameters.sourceMargin;
+    }
+
+    public double getSegmentAngle() {
+        return segmentAngle;
+    }
+
+    public void setSegmentAngle(double segmentAngle) {
+        this.segmentAngle = segmentAngle;
+    }
+
+    public double getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(double segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public double getTargetMargin() {
+        return targetMargin;
+    }
+
+    public void setTargetMargin(double targetMargin) {
+        this.targetMargin = targetMargin;
+    }
+
+    public double getSegmentMargin() {
+        return segmentMargin;
+    }
+
+    public void setSegmentMargin(double segmentMargin) {
+        this.segmentMargin = segmentMargin;
+    }
+
+    public double getSourceMargin() {
+        return sourceMargin;
+    }
+
+    public void setSourceMargin(double sourceMargin) {
+        this.sourceMargin = sourceMargin;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 59 * hash + hash(segmentAngle);
+        hash = 59 * hash + hash(segmentSize);
+        hash = 59 * hash + hash(targetMargin);
+        hash = 59 * hash + hash(segmentMargin);
+        hash = 59 * hash + hash(sourceMargin);
+        return hash;
+    }
+
+    private static int hash(double d) {
+        long bits = Double.doubleToLongBits(d);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final LayoutParameters other = (LayoutParameters) obj;
+        return Double.doubleToLongBits(segmentAngle) == Double.doubleToLongBits(other.segmentAngle)
+                && Double.doubleToLongBits(segmentSize) == Double.doubleToLongBits(other.segmentSize)
+                && Double.doubleToLongBits(targetMargin) == Double.doubleToLongBits(other.targetMargin)
+                && Double.doubleToLongBits(segmentMargin) == Double.doubleToLongBits(other.segmentMargin)
+                && Double.doubleToLongBits(sourceMargin) == Double.doubleToLongBits(other.sourceMargin);
+    }
+
+}
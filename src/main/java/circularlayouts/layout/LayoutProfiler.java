@@ -0,0 +1,238 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.layout;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the time and the allocated bytes of the phases of a layout by
+ * {@link RatioLayoutBuilder}. Times of phases that run in parallel on a
+ * fork/join pool are summed over all threads, the layout time is the wall
+ * clock time of {@code addTracks}. Allocation is measured per thread where
+ * the JVM supports it, otherwise it is reported as -1.
+ *
+ * A profiler can be shared by builders and collects until it is
+ * {@link #reset()}.
+ *
+ * @author Nils Hoffmann
+ */
+public class LayoutProfiler {
+
+    public enum Phase {
+
+        /**
+         * Row and column sums of the matrix.
+         */
+        MARGINALS,
+        /**
+         * Sorting the links of each row and column by value.
+         */
+        RANKING,
+        /**
+         * Angular offsets of the ribbon ends within their segments.
+         */
+        ANGLE_OFFSETS,
+        /**
+         * Creation of the ribbons and their shapes.
+         */
+        RIBBON_SHAPES,
+        /**
+         * Segments, ticks and the tracks holding them.
+         */
+        TRACK_ASSEMBLY
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private final com.sun.management.ThreadMXBean threads;
+    private final AtomicLongArray nanos = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray bytes = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray counts = new AtomicLongArray(PHASES.length);
+    private final AtomicLong layoutNanos = new AtomicLong();
+    private final AtomicLong layouts = new AtomicLong();
+
+    public LayoutProfiler() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean t = null;
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            t = (com.sun.management.ThreadMXBean) bean;
+            if (!t.isThreadAllocatedMemorySupported()) {
+                t = null;
+            } else if (!t.isThreadAllocatedMemoryEnabled()) {
+                t.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+        this.threads = t;
+    }
+
+    /**
+     * @return true, if allocated bytes are measured
+     */
+    public boolean isAllocationSupported() {
+        return threads != null;
+    }
+
+    /**
+     * @return the bytes allocated by the calling thread so far, or -1 if not
+     * supported
+     */
+    long allocatedBytes() {
+        return threads == null ? -1l : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Adds the time and allocation of the calling thread since the given
+     * start to a phase.
+     */
+    void record(Phase phase, long startNanos, long startBytes) {
+        nanos.addAndGet(phase.ordinal(), System.nanoTime() - startNanos);
+        if (threads != null) {
+            bytes.addAndGet(phase.ordinal(), allocatedBytes() - startBytes);
+        }
+        counts.incrementAndGet(phase.ordinal());
+    }
+
+    void recordLayout(long startNanos) {
+        layoutNanos.addAndGet(System.nanoTime() - startNanos);
+        layouts.incrementAndGet();
+    }
+
+    /**
+     * @return a stopwatch for the calling thread, started now
+     */
+    Stopwatch start() {
+        return new Stopwatch();
+    }
+
+    public void reset() {
+        for (int i = 0; i < PHASES.length; i++) {
+            nanos.set(i, 0);
+            bytes.set(i, 0);
+            counts.set(i, 0);
+        }
+        layoutNanos.set(0);
+        layouts.set(0);
+    }
+
+    /**
+     * @return a snapshot of the phases recorded since the last reset
+     */
+    public Report getReport() {
+        long[] n = new long[PHASES.length];
+        long[] b = new long[PHASES.length];
+        long[] c = new long[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            n[i] = nanos.get(i);
+            b[i] = threads == null ? -1l : bytes.get(i);
+            c[i] = counts.get(i);
+        }
+        return new Report(n, b, c, layoutNanos.get(), layouts.get());
+    }
+
+    /**
+     * Measures consecutive phases on one thread: each lap is recorded for
+     * its phase and starts the next one. Not thread safe.
+     */
+    final class Stopwatch {
+
+        private long startNanos;
+        private long startBytes;
+
+        private Stopwatch() {
+            restart();
+        }
+
+        void restart() {
+            startBytes = allocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        void lap(Phase phase) {
+            record(phase, startNanos, startBytes);
+            restart();
+        }
+    }
+
+    /**
+     * The time and allocation per phase of all layouts recorded by a
+     * profiler.
+     */
+    public static final class Report {
+
+        private final long[] nanos;
+        private final long[] bytes;
+        private final long[] counts;
+        private final long layoutNanos;
+        private final long layouts;
+
+        Report(long[] nanos, long[] bytes, long[] counts, long layoutNanos, long layouts) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+            this.counts = counts;
+            this.layoutNanos = layoutNanos;
+            this.layouts = layouts;
+        }
+
+        /**
+         * @return the time spent in the phase in nanoseconds, summed over
+         * all threads
+         */
+        public long getTime(Phase phase) {
+            return nanos[phase.ordinal()];
+        }
+
+        /**
+         * @return the bytes allocated in the phase, or -1 if not measured
+         */
+        public long getAllocatedBytes(Phase phase) {
+            return bytes[phase.ordinal()];
+        }
+
+        /**
+         * @return how often the phase was measured, e.g. once per row
+         */
+        public long getCount(Phase phase) {
+            return counts[phase.ordinal()];
+        }
+
+        /**
+         * @return the wall clock time of all layouts in nanoseconds
+         */
+        public long getLayoutTime() {
+            return layoutNanos;
+        }
+
+        public long getLayoutCount() {
+            return layouts;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US, "%d layouts in %.3f ms%n", layouts, layoutNanos / 1e6d));
+            sb.append(String.format(Locale.US, "%-15s %12s %14s %10s%n", "phase", "time [ms]", "allocated [kB]", "count"));
+            for (Phase p : PHASES) {
+                int i = p.ordinal();
+                sb.append(String.format(Locale.US, "%-15s %12.3f %14s %10d%n", p, nanos[i] / 1e6d,
+                        bytes[i] < 0 ? "n/a" : String.format(Locale.US, "%.1f", bytes[i] / 1024d), counts[i]));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.layout;
+
+/**
+ * A matrix of link values between segments. Missing links are represented by
+ * NaN, as for the plain {@code double[][]} input.
+ *
+ * Entries are addressed by an entry index. The entries of a row occupy the
+ * contiguous index range [{@link #getRowStart(int)},
+ * {@link #getRowEnd(int)}) in ascending column order. Column traversal goes
+ * through positions [{@link #getColumnStart(int)},
+ * {@link #getColumnEnd(int)}), which are mapped to entry indices by
+ * {@link #getColumnEntry(int)} in ascending row order. Dense implementations
+ * may report entries whose value is NaN, sparse ones only store non-empty
+ * entries.
+ *
+ * @author Nils Hoffmann
+ */
+public interface Matrix {
+
+    int getRows();
+
+    int getColumns();
+
+    /**
+     * @return the value at the given cell, or NaN if there is no link
+     */
+    double get(int row, int column);
+
+    /**
+     * @return the number of addressable entries, an upper bound for the
+     * number of links
+     */
+    int getEntryCount();
+
+    int getRowStart(int row);
+
+    int getRowEnd(int row);
+
+    int getColumnStart(int column);
+
+    int getColumnEnd(int column);
+
+    int getColumnEntry(int position);
+
+    int getRow(int entry);
+
+    int getColumn(int entry);
+
+    double getValue(int entry);
+
+    /**
+     * @return the entry index of the given cell, or -1 if there is no link
+     */
+    int getEntry(int row, int column);
+}
@@ -0,0 +1,88 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.layout;
+
+/**
+ * Row and column marginals of a data matrix, computed in a single pass over
+ * its entries. NaN values are treated as "no link" and are neither summed nor
+ * counted, consistent with {@link Utils}.
+ *
+ * @author Nils Hoffmann
+ */
+public class MatrixMarginals {
+
+    private final double[] rowSums;
+    private final double[] columnSums;
+    private final int[] rowCounts;
+    private final int[] columnCounts;
+    private final double total;
+
+    public MatrixMarginals(double[][] data) {
+        this(new DenseMatrix(data));
+    }
+
+    public MatrixMarginals(Matrix matrix) {
+        int rows = matrix.getRows();
+        int columns = matrix.getColumns();
+        rowSums = new double[rows];
+        columnSums = new double[columns];
+        rowCounts = new int[rows];
+        columnCounts = new int[columns];
+        double sum = 0.0d;
+        for (int i = 0; i < rows; i++) {
+            for (int e = matrix.getRowStart(i); e < matrix.getRowEnd(i); e++) {
+                double value = matrix.getValue(e);
+                if (!Double.isNaN(value)) {
+                    int j = matrix.getColumn(e);
+                    rowSums[i] += value;
+                    columnSums[j] += value;
+                    rowCounts[i]++;
+                    columnCounts[j]++;
+                }
+            }
+            sum += rowSums[i];
+        }
+        total = sum;
+    }
+
+    public int getRows() {
+        return rowSums.length;
+    }
+
+    public int getColumns() {
+        return columnSums.length;
+    }
+
+    public double getRowSum(int row) {
+        return rowSums[row];
+    }
+
+    public double getColumnSum(int column) {
+        return columnSums[column];
+    }
+
+    public int getRowCount(int row) {
+        return rowCounts[row];
+    }
+
+    public int getColumnCount(int column) {
+        return columnCounts[column];
+    }
+
+    public double getTotal() {
+        return total;
+    }
+}
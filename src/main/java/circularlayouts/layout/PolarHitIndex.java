@@ -0,0 +1,606 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.layout;
+
+import circularlayouts.IDrawable;
+import circularlayouts.tracks.AnnularSector;
+import circularlayouts.tracks.Ribbon;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spatial index over the drawables of one track, keyed by angle bins and
+ * radius bands around the layout center. Each drawable is registered in
+ * every cell its outline crosses or its interior covers, so a point query
+ * only tests the drawables of a single cell. Most ribbons pass close to the
+ * center, the square within the innermost band is therefore split into a
+ * grid of its own. The default resolution grows with the number of
+ * drawables.
+ *
+ * Angle bins are uniform in a pseudo angle, which is monotonic in the angle
+ * but needs no trigonometry. The borders of all cells are lines and circles,
+ * so the cells crossed by an edge of an outline are found exactly from the
+ * crossings of the edge with these borders.
+ *
+ * The index is built in layout coordinates, queries map the point back
+ * through the inverse of the transform used for painting.
+ *
+ * @author Nils Hoffmann
+ * @param <T> the type of drawables indexed
+ */
+public class PolarHitIndex<T extends IDrawable> {
+
+    private static final double FLATNESS = 0.05d;
+    //angle bins per band width of arc length, at least
+    private static final double CELL_ASPECT = 4.0d;
+    private final List<? extends T> drawables;
+    private final double centerx;
+    private final double centery;
+    private final double maxRadius;
+    private final int angleBins;
+    private final int radiusBands;
+    private final double bandWidth;
+    //cells per side of the square around the center
+    private final int gridSize;
+    private final double gridCellSize;
+    //the bins of a band are the angle bins merged by a power of two, the
+    //cells of the inner bands are not much narrower than they are deep
+    private final int[] bandShift;
+    private final int[] bandOffset;
+    //directions of the borders between the angle bins
+    private final double[] borderx;
+    private final double[] bordery;
+    private final int[] cellPointers;
+    private final int[] cellDrawables;
+
+    public PolarHitIndex(List<? extends T> drawables, double centerx, double centery) {
+        this(drawables, centerx, centery, getMaxRadius(drawables, centerx, centery),
+                getDefaultAngleBins(drawables.size()), getDefaultRadiusBands(drawables.size()), getDefaultGridSize(drawables.size()));
+    }
+
+    public PolarHitIndex(List<? extends T> drawables, double centerx, double centery, double maxRadius, int angleBins, int radiusBands) {
+        this(drawables, centerx, centery, maxRadius, angleBins, radiusBands, 1);
+    }
+
+    /**
+     * @param drawables the drawables in track order
+     * @param centerx the x coordinate of the center
+     * @param centery the y coordinate of the center
+     * @param maxRadius the radius beyond which nothing is selected
+     * @param angleBins the number of angle bins of the outer radius bands,
+     * the inner bands merge them
+     * @param radiusBands the number of radius bands, including the innermost
+     * @param gridSize the number of cells per side of the square within the
+     * innermost band
+     */
+    public PolarHitIndex(List<? extends T> drawables, double centerx, double centery, double maxRadius, int angleBins, int radiusBands, int gridSize) {
+        if (angleBins < 1 || radiusBands < 1 || gridSize < 1) {
+            throw new IllegalArgumentException("Bins, bands and grid size must be positive: " + angleBins + ", " + radiusBands + ", " + gridSize);
+        }
+        this.drawables = drawables;
+        this.centerx = centerx;
+        this.centery = centery;
+        this.maxRadius = maxRadius;
+        this.angleBins = angleBins;
+        this.radiusBands = radiusBands;
+        this.bandWidth = maxRadius / radiusBands;
+        this.gridSize = gridSize;
+        this.gridCellSize = 2 * bandWidth / gridSize;
+        this.bandShift = new int[radiusBands + 1];
+        this.bandOffset = new int[radiusBands + 1];
+        int offset = gridSize * gridSize;
+        for (int band = 1; band < radiusBands; band++) {
+            int shift = 0;
+            while (shift < 30 && (angleBins >> (shift + 1)) >= 2 * Math.PI * (band + 0.5d) * CELL_ASPECT) {
+                shift++;
+            }
+            bandShift[band] = shift;
+            bandOffset[band] = offset;
+            offset += getBins(band);
+        }
+        bandOffset[radiusBands] = offset;
+        this.borderx = new double[angleBins];
+        this.bordery = new double[angleBins];
+        double[] direction = new double[2];
+        for (int k = 0; k < angleBins; k++) {
+            getDirection(4.0d * k / angleBins, direction);
+            borderx[k] = direction[0];
+            bordery[k] = direction[1];
+        }
+        int cells = getCellCount();
+        Marker marker = new Marker(cells);
+        //the cells of one shape, a ribbon and its connector are marked apart
+        Marker shapeMarker = new Marker(cells);
+        int[] pairCells = new int[Math.max(16, drawables.size() * 8)];
+        int[] pairDrawables = new int[pairCells.length];
+        int pairs = 0;
+        for (int id = 0; id < drawables.size(); id++) {
+            T drawable = drawables.get(id);
+            marker.reset();
+            mark(drawable, shapeMarker, marker);
+            if (drawable instanceof Ribbon) {
+                AnnularSector connector = ((Ribbon) drawable).getConnector();
+                if (connector != null) {
+                    mark(connector, shapeMarker, marker);
+                }
+            }
+            if (pairs + marker.size > pairCells.length) {
+                int capacity = Math.max(pairs + marker.size, pairCells.length + (pairCells.length >> 1));
+                pairCells = Arrays.copyOf(pairCells, capacity);
+                pairDrawables = Arrays.copyOf(pairDrawables, capacity);
+            }
+            for (int k = 0; k < marker.size; k++) {
+                pairCells[pairs] = marker.cells[k];
+                pairDrawables[pairs] = id;
+                pairs++;
+            }
+        }
+        //counting sort by cell, drawables stay in ascending order per cell
+        cellPointers = new int[cells + 1];
+        for (int k = 0; k < pairs; k++) {
+            cellPointers[pairCells[k] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellPointers[c + 1] += cellPointers[c];
+        }
+        cellDrawables = new int[pairs];
+        int[] next = Arrays.copyOf(cellPointers, cells);
+        for (int k = 0; k < pairs; k++) {
+            cellDrawables[next[pairCells[k]]++] = pairDrawables[k];
+        }
+    }
+
+    /**
+     * @return the number of angle bins for the given number of drawables,
+     * growing with its square root from 128 to 2048
+     */
+    public static int getDefaultAngleBins(int drawables) {
+        return Math.max(128, Math.min(2048, (int) (4 * Math.sqrt(drawables))));
+    }
+
+    /**
+     * @return the number of radius bands for the given number of drawables,
+     * growing with its square root from 16 to 32
+     */
+    public static int getDefaultRadiusBands(int drawables) {
+        return Math.max(16, Math.min(32, (int) (Math.sqrt(drawables) / 8)));
+    }
+
+    /**
+     * @return the number of cells per side of the square around the center
+     * for the given number of drawables, growing with its square root from 4
+     * to 64
+     */
+    public static int getDefaultGridSize(int drawables) {
+        return Math.max(4, Math.min(64, (int) (Math.sqrt(drawables) / 6)));
+    }
+
+    private static double getMaxRadius(List<? extends IDrawable> drawables, double centerx, double centery) {
+        double max = 1.0d;
+        for (IDrawable d : drawables) {
+            //the corners of the bounds of a ribbon lie far outside of its
+            //connector
+            AnnularSector sector = d instanceof Ribbon ? ((Ribbon) d).getConnector() : null;
+            if (sector != null) {
+                max = Math.max(max, Point2D.distance(centerx, centery, sector.getCenterx(), sector.getCentery()) + sector.getOuterRadius());
+                continue;
+            }
+            Rectangle2D b = d.getBounds2D();
+            double dx = Math.max(Math.abs(b.getMinX() - centerx), Math.abs(b.getMaxX() - centerx));
+            double dy = Math.max(Math.abs(b.getMinY() - centery), Math.abs(b.getMaxY() - centery));
+            max = Math.max(max, Math.sqrt(dx * dx + dy * dy));
+        }
+        return Math.nextUp(max);
+    }
+
+    private int getCellCount() {
+        return bandOffset[radiusBands];
+    }
+
+    private int getBins(int band) {
+        return angleBins >> bandShift[band];
+    }
+
+    /**
+     * @return the band of a cell outside of the square around the center
+     */
+    private int getBand(int cell) {
+        int band = Arrays.binarySearch(bandOffset, 1, radiusBands, cell);
+        return band >= 0 ? band : -band - 2;
+    }
+
+    private int getCell(double x, double y) {
+        double dx = x - centerx;
+        double dy = y - centery;
+        if (Math.abs(dx) < bandWidth && Math.abs(dy) < bandWidth) {
+            int column = Math.min(gridSize - 1, (int) ((dx + bandWidth) / gridCellSize));
+            int row = Math.min(gridSize - 1, (int) ((dy + bandWidth) / gridCellSize));
+            return row * gridSize + column;
+        }
+        //outside of the square the radius is at least one band width
+        int band = Math.max(1, (int) (Math.sqrt(dx * dx + dy * dy) / bandWidth));
+        if (band >= radiusBands) {
+            return -1;
+        }
+        return bandOffset[band] + (getBin(dx, dy) >> bandShift[band]);
+    }
+
+    private int getBin(double dx, double dy) {
+        double sum = Math.abs(dx) + Math.abs(dy);
+        if (sum == 0) {
+            return 0;
+        }
+        //pseudo angle from 0 to 4, one per quadrant
+        double p = dy / sum;
+        double turn = dx >= 0 ? (dy >= 0 ? p : 4 + p) : 2 - p;
+        return Math.min(angleBins - 1, (int) (turn * angleBins / 4));
+    }
+
+    /**
+     * Stores the unit vector with the given pseudo angle in the array.
+     */
+    private static void getDirection(double turn, double[] direction) {
+        double x;
+        double y;
+        if (turn < 1) {
+            y = turn;
+            x = 1 - y;
+        } else if (turn < 3) {
+            y = 2 - turn;
+            x = Math.abs(y) - 1;
+        } else {
+            y = turn - 4;
+            x = 1 + y;
+        }
+        double length = Math.sqrt(x * x + y * y);
+        direction[0] = x / length;
+        direction[1] = y / length;
+    }
+
+    /**
+     * Registers the cells crossed by the outline of the shape, then fills the
+     * unmarked cells that lie inside the shape. Cells between marked cells
+     * are crossed by no outline, they are either completely inside or
+     * outside and one containment test decides for a whole run of them.
+     * The cells are added to the cells of the drawable.
+     */
+    private void mark(Shape shape, Marker marker, Marker drawableMarker) {
+        marker.reset();
+        markShape(shape, marker);
+        for (int k = 0; k < marker.size; k++) {
+            drawableMarker.mark(marker.cells[k]);
+        }
+    }
+
+    private void markShape(Shape shape, Marker marker) {
+        int before = marker.size;
+        double[] coords = new double[6];
+        double startx = 0, starty = 0, lastx = 0, lasty = 0;
+        for (PathIterator it = shape.getPathIterator(null, FLATNESS); !it.isDone(); it.next()) {
+            switch (it.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    startx = lastx = coords[0];
+                    starty = lasty = coords[1];
+                    markCell(getCell(lastx, lasty), marker);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    markEdge(lastx, lasty, coords[0], coords[1], marker);
+                    lastx = coords[0];
+                    lasty = coords[1];
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    markEdge(lastx, lasty, startx, starty, marker);
+                    lastx = startx;
+                    lasty = starty;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (marker.size == before) {
+            return;
+        }
+        //the outline cells in ascending order, grouped by row and band
+        int outline = marker.size;
+        Arrays.sort(marker.cells, before, outline);
+        int grid = gridSize * gridSize;
+        int k = before;
+        if (marker.cells[k] < grid) {
+            for (int row = 0; row < gridSize; row++) {
+                int first = row * gridSize;
+                int runStart = 0;
+                for (; k < outline && marker.cells[k] < first + gridSize; k++) {
+                    fillGridRun(shape, marker, first, runStart, marker.cells[k] - first);
+                    runStart = marker.cells[k] - first + 1;
+                }
+                fillGridRun(shape, marker, first, runStart, gridSize);
+            }
+        } else if (shape.contains(centerx, centery)) {
+            for (int cell = 0; cell < grid; cell++) {
+                marker.mark(cell);
+            }
+        }
+        if (k == outline) {
+            //no outline outside of the square, the bands are all inside or
+            //all outside
+            if (probe(shape, 1, 0)) {
+                for (int cell = grid; cell < getCellCount(); cell++) {
+                    marker.mark(cell);
+                }
+            }
+            return;
+        }
+        int minBand = getBand(marker.cells[k]);
+        //the bands below the first marked band are crossed by no outline
+        //and connected, they are all inside or all outside
+        if (minBand > 1 && probe(shape, 1, 0)) {
+            for (int cell = grid; cell < bandOffset[minBand]; cell++) {
+                marker.mark(cell);
+            }
+        }
+        int maxBand = getBand(marker.cells[outline - 1]);
+        for (int band = minBand; band <= maxBand; band++) {
+            int first = bandOffset[band];
+            int bins = getBins(band);
+            if (k == outline || marker.cells[k] >= first + bins) {
+                //band is crossed by no outline, e.g. between the arcs of a ring
+                if (probe(shape, band, 0)) {
+                    for (int bin = 0; bin < bins; bin++) {
+                        marker.mark(first + bin);
+                    }
+                }
+                continue;
+            }
+            //the runs between consecutive marked bins, once around the band
+            int anchor = marker.cells[k] - first;
+            int previous = anchor;
+            for (k++; k < outline && marker.cells[k] < first + bins; k++) {
+                fillRun(shape, marker, band, previous + 1, marker.cells[k] - first);
+                previous = marker.cells[k] - first;
+            }
+            fillRun(shape, marker, band, previous + 1, anchor + bins);
+        }
+    }
+
+    /**
+     * Marks the bins of a band from the first up to the last, exclusive and
+     * taken modulo the number of bins, if the shape contains the middle of
+     * the bin halfway. Long runs are mostly outside of the bounds of the
+     * shape, which rejects them quickly.
+     */
+    private void fillRun(Shape shape, Marker marker, int band, int from, int to) {
+        int bins = getBins(band);
+        if (from < to && probe(shape, band, ((from + to) >>> 1) % bins)) {
+            for (int bin = from; bin < to; bin++) {
+                marker.mark(bandOffset[band] + bin % bins);
+            }
+        }
+    }
+
+    private void fillGridRun(Shape shape, Marker marker, int first, int from, int to) {
+        if (from < to && shape.contains(centerx - bandWidth + (((from + to) >>> 1) + 0.5d) * gridCellSize, centery - bandWidth + (first / gridSize + 0.5d) * gridCellSize)) {
+            for (int column = from; column < to; column++) {
+                marker.mark(first + column);
+            }
+        }
+    }
+
+    /**
+     * @return true, if the shape contains the middle of the cell of a band
+     * outside of the square around the center
+     */
+    private boolean probe(Shape shape, int band, int bin) {
+        double[] direction = new double[2];
+        getDirection(4 * (bin + 0.5d) / getBins(band), direction);
+        //one and a half band widths are outside of the square
+        double radius = (band + 0.5d) * bandWidth;
+        return shape.contains(centerx + radius * direction[0], centery + radius * direction[1]);
+    }
+
+    /**
+     * Marks the cells crossed by an edge. The edge is cut where it crosses
+     * the borders of the angle bins, the circles between the bands and the
+     * lines of the grid, every piece lies in a single cell.
+     */
+    private void markEdge(double x0, double y0, double x1, double y1, Marker marker) {
+        //the pieces of the edge cover its end points
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+        double px = x0 - centerx;
+        double py = y0 - centery;
+        marker.clearParameters();
+        boolean inside = Math.max(Math.abs(px), Math.abs(px + dx)) < bandWidth
+                && Math.max(Math.abs(py), Math.abs(py + dy)) < bandWidth;
+        if (!inside) {
+            double a = dx * dx + dy * dy;
+            double b = px * dx + py * dy;
+            double closest = Math.max(0.0d, Math.min(1.0d, -b / a));
+            double cx = px + closest * dx;
+            double cy = py + closest * dy;
+            double near = Math.sqrt(cx * cx + cy * cy);
+            double r0 = Math.sqrt(px * px + py * py);
+            double r1 = Math.sqrt((px + dx) * (px + dx) + (py + dy) * (py + dy));
+            int cell = getCell(x0, y0);
+            if (cell >= 0 && cell == getCell(x1, y1) && (int) (near / bandWidth) == (int) (r0 / bandWidth)
+                    && (int) (near / bandWidth) >= 2) {
+                //both ends in one cell of a band outside of the square, and
+                //the edge does not dip below the band
+                marker.mark(cell);
+                return;
+            }
+            int lastBand = Math.min(radiusBands, (int) (Math.max(r0, r1) / bandWidth) + 1);
+            //borders between the bins of the end points, the shorter way round,
+            //in the finest band the edge reaches
+            int shift = bandShift[Math.max(1, Math.min(radiusBands - 1, lastBand))];
+            int bins = angleBins >> shift;
+            int bin0 = getBin(px, py) >> shift;
+            int bin1 = getBin(px + dx, py + dy) >> shift;
+            int forward = (bin1 - bin0 + bins) % bins;
+            int from = forward <= bins / 2 ? bin0 : bin1;
+            int count = Math.min(bins, 2 + (forward <= bins / 2 ? forward : bins - forward));
+            for (int k = 0; k < count; k++) {
+                int border = ((from + k) % bins) << shift;
+                double denominator = borderx[border] * dy - bordery[border] * dx;
+                if (denominator != 0) {
+                    marker.addParameter((bordery[border] * px - borderx[border] * py) / denominator);
+                }
+            }
+            //circles between the bands, the distance to the center falls up to
+            //the closest point and rises after it, the innermost circle lies
+            //within the square
+            double c = px * px + py * py;
+            for (int band = Math.max(2, (int) (near / bandWidth) + 1); band * bandWidth <= r0 && band < radiusBands; band++) {
+                double radius = band * bandWidth;
+                marker.addParameter((-b - Math.sqrt(Math.max(0.0d, b * b - a * (c - radius * radius)))) / a);
+            }
+            for (int band = Math.max(2, (int) (near / bandWidth) + 1); band * bandWidth <= r1 && band < radiusBands; band++) {
+                double radius = band * bandWidth;
+                marker.addParameter((-b + Math.sqrt(Math.max(0.0d, b * b - a * (c - radius * radius)))) / a);
+            }
+        }
+        //lines of the grid, the outer ones are the border of the square
+        if (Math.max(px, px + dx) >= -bandWidth && Math.min(px, px + dx) <= bandWidth
+                && Math.max(py, py + dy) >= -bandWidth && Math.min(py, py + dy) <= bandWidth) {
+            addGridLines(px, dx, marker);
+            addGridLines(py, dy, marker);
+        }
+        double[] t = marker.parameters;
+        if (marker.parameterCount > 1) {
+            Arrays.sort(t, 0, marker.parameterCount);
+        }
+        double previous = 0.0d;
+        for (int k = 0; k <= marker.parameterCount; k++) {
+            double next = k == marker.parameterCount ? 1.0d : t[k];
+            if (next > previous && next <= 1.0d) {
+                double middle = 0.5d * (previous + next);
+                markCell(getCell(x0 + middle * dx, y0 + middle * dy), marker);
+                previous = next;
+            }
+        }
+    }
+
+    private void addGridLines(double p, double d, Marker marker) {
+        if (d == 0) {
+            return;
+        }
+        int first = Math.max(0, (int) Math.ceil((Math.min(p, p + d) + bandWidth) / gridCellSize));
+        int last = Math.min(gridSize, (int) Math.floor((Math.max(p, p + d) + bandWidth) / gridCellSize));
+        for (int k = first; k <= last; k++) {
+            marker.addParameter((k * gridCellSize - bandWidth - p) / d);
+        }
+    }
+
+    private static void markCell(int cell, Marker marker) {
+        if (cell >= 0) {
+            marker.mark(cell);
+        }
+    }
+
+    public List<? extends T> getDrawables() {
+        return drawables;
+    }
+
+    public double getMaxRadius() {
+        return maxRadius;
+    }
+
+    /**
+     * @return the number of drawables registered for the cell containing
+     * the point given in layout coordinates
+     */
+    public int getCandidateCount(double x, double y) {
+        int cell = getCell(x, y);
+        if (cell < 0) {
+            return 0;
+        }
+        return cellPointers[cell + 1] - cellPointers[cell];
+    }
+
+    /**
+     * Returns the first drawable, in track order, selected by the given
+     * point. Only the drawables registered for the cell of the point are
+     * tested.
+     *
+     * @param point the point in layout coordinates
+     * @return the selected shape or null
+     */
+    public Shape select(Point2D point) {
+        int cell = getCell(point.getX(), point.getY());
+        if (cell < 0) {
+            return null;
+        }
+        for (int k = cellPointers[cell]; k < cellPointers[cell + 1]; k++) {
+            Shape s = drawables.get(cellDrawables[k]).select(point);
+            if (s != null) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Set of marked cells for one drawable, cleared in O(1) by a stamp.
+     */
+    private static final class Marker {
+
+        private final int[] stamps;
+        private int stamp = 0;
+        private int[] cells = new int[64];
+        private int size = 0;
+        //where an edge crosses the borders of cells
+        private double[] parameters = new double[64];
+        private int parameterCount = 0;
+
+        Marker(int cellCount) {
+            stamps = new int[cellCount];
+        }
+
+        void reset() {
+            stamp++;
+            size = 0;
+        }
+
+        void clearParameters() {
+            parameterCount = 0;
+        }
+
+        void addParameter(double t) {
+            if (t > 0 && t < 1) {
+                if (parameterCount == parameters.length) {
+                    parameters = Arrays.copyOf(parameters, parameterCount * 2);
+                }
+                parameters[parameterCount++] = t;
+            }
+        }
+
+        void mark(int cell) {
+            if (stamps[cell] != stamp) {
+                stamps[cell] = stamp;
+                if (size == cells.length) {
+                    cells = Arrays.copyOf(cells, size * 2);
+                }
+                cells[size++] = cell;
+            }
+        }
+    }
+}
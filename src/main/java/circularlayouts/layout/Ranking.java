@@ -0,0 +1,132 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.layout;
+
+import java.util.Arrays;
+
+/**
+ * Ranks (id, value) pairs by descending value on primitive arrays. Ties keep
+ * the order in which the pairs were added, so ranking is deterministic. The
+ * buffers grow on demand and are reused across calls, an instance is meant
+ * to rank one row or column after the other and is not thread safe.
+ *
+ * @author Nils Hoffmann
+ */
+public class Ranking {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private int size = 0;
+    private int[] ids;
+    private double[] values;
+    private int[] idScratch;
+    private double[] valueScratch;
+
+    public Ranking() {
+        this(16);
+    }
+
+    public Ranking(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        ids = new int[capacity];
+        values = new double[capacity];
+        idScratch = new int[capacity];
+        valueScratch = new double[capacity];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(int id, double value) {
+        if (size == ids.length) {
+            int capacity = size + (size >> 1) + 1;
+            ids = Arrays.copyOf(ids, capacity);
+            values = Arrays.copyOf(values, capacity);
+            idScratch = new int[capacity];
+            valueScratch = new double[capacity];
+        }
+        ids[size] = id;
+        values[size] = value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the id at the given rank, valid after {@link #sort()}
+     */
+    public int getId(int rank) {
+        return ids[rank];
+    }
+
+    /**
+     * @return the value at the given rank, valid after {@link #sort()}
+     */
+    public double getValue(int rank) {
+        return values[rank];
+    }
+
+    /**
+     * Sorts the pairs added since the last {@link #clear()} by descending
+     * value. The sort is stable.
+     */
+    public void sort() {
+        mergeSort(ids, values, idScratch, valueScratch, 0, size);
+    }
+
+    private static void mergeSort(int[] ids, double[] values, int[] idScratch, double[] valueScratch, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(ids, values, from, to);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(ids, values, idScratch, valueScratch, from, mid);
+        mergeSort(ids, values, idScratch, valueScratch, mid, to);
+        if (values[mid - 1] >= values[mid]) {
+            return;
+        }
+        System.arraycopy(ids, from, idScratch, from, to - from);
+        System.arraycopy(values, from, valueScratch, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int k = from; k < to; k++) {
+            if (right >= to || (left < mid && valueScratch[left] >= valueScratch[right])) {
+                ids[k] = idScratch[left];
+                values[k] = valueScratch[left++];
+            } else {
+                ids[k] = idScratch[right];
+                values[k] = valueScratch[right++];
+            }
+        }
+    }
+
+    private static void insertionSort(int[] ids, double[] values, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int id = ids[i];
+            double value = values[i];
+            int j = i - 1;
+            while (j >= from && values[j] < value) {
+                ids[j + 1] = ids[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            values[j + 1] = value;
+        }
+    }
+}
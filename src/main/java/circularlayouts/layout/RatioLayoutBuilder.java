@@ -16,21 +16,25 @@
 package circularlayouts.layout;
 
 import circularlayouts.IDrawable;
+import circularlayouts.tracks.AnnularSector;
 import circularlayouts.tracks.Ribbon;
+import circularlayouts.tracks.RibbonTable;
 import circularlayouts.tracks.Segment;
 import circularlayouts.tracks.Ticks;
 import circularlayouts.tracks.Track;
-import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Shape;
-import java.awt.geom.Arc2D;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  *
@@ -38,24 +42,91 @@ import java.util.TreeMap;
  */
 public class RatioLayoutBuilder {
 
-    private final double[][] data;
+    /**
+     * Outer radius of the segment track in layout space. It equals the radius
+     * of the default 800x600 panel, so that segment sizes and margins given
+     * in pixels look the same there.
+     */
+    public static final double LAYOUT_RADIUS = 240.0d;
+    private final Matrix matrix;
+    private final MatrixMarginals marginals;
+    //set from the event dispatch thread, read by the layout thread
+    private volatile ForkJoinPool forkJoinPool = null;
+    private volatile int rowBlockSize = 64;
+    private volatile LayoutProfiler profiler = null;
 
     public RatioLayoutBuilder(double[][] data) {
-        this.data = data;
+        this(new DenseMatrix(data));
     }
 
-    public static Shape createCurvedSegment(double startAngle, double endAngle, double innerRadius, double outerRadius, double centerx, double centery) {
-        Arc2D.Double innerArc = new Arc2D.Double(Arc2D.OPEN);
-        innerArc.setArcByCenter(centerx, centery, innerRadius + ((outerRadius - innerRadius) / 2.0d), Math.toDegrees(2 * Math.PI * startAngle), Math.toDegrees(2 * Math.PI * endAngle) - Math.toDegrees(2 * Math.PI * startAngle), Arc2D.OPEN);
-        BasicStroke stroke = new BasicStroke((float) (outerRadius - innerRadius), BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND);
-        return stroke.createStrokedShape(innerArc);
+    public RatioLayoutBuilder(Matrix matrix) {
+        this(matrix, null);
+    }
+
+    /**
+     * @param matrix the matrix
+     * @param profiler the profiler for all layouts of this builder, including
+     * the marginals computed here, or null
+     */
+    public RatioLayoutBuilder(Matrix matrix, LayoutProfiler profiler) {
+        this.matrix = matrix;
+        this.profiler = profiler;
+        LayoutProfiler.Stopwatch watch = profiler == null ? null : profiler.start();
+        this.marginals = new MatrixMarginals(matrix);
+        if (watch != null) {
+            watch.lap(LayoutProfiler.Phase.MARGINALS);
+        }
+    }
+
+    public Matrix getMatrix() {
+        return matrix;
+    }
+
+    public MatrixMarginals getMarginals() {
+        return marginals;
+    }
+
+    public static AnnularSector createCurvedSegment(double startAngle, double endAngle, double innerRadius, double outerRadius, double centerx, double centery) {
+        return new AnnularSector(centerx, centery, innerRadius, outerRadius, startAngle, endAngle);
+    }
+
+    /**
+     * Lays out all tracks in layout space: centered at the origin with an
+     * outer segment radius of {@link #LAYOUT_RADIUS}. The result is
+     * independent of the component size and is mapped to a viewport with
+     * {@link #createViewportTransform(double, double, double, double)} at
+     * paint time.
+     */
+    public void addTracks(double startAngle, double segmentSize, double targetMargin, double segmentMargin, double sourceMargin, Map<String, Track<? extends IDrawable>> shapes) {
+        addTracks(startAngle, LAYOUT_RADIUS, 0.0d, 0.0d, segmentSize, targetMargin, segmentMargin, sourceMargin, shapes);
+    }
+
+    public void addTracks(LayoutParameters parameters, Map<String, Track<? extends IDrawable>> shapes) {
+        addTracks(parameters.getSegmentAngle(), parameters.getSegmentSize(), parameters.getTargetMargin(), parameters.getSegmentMargin(), parameters.getSourceMargin(), shapes);
+    }
+
+    /**
+     * Creates the transform from layout space to a viewport rectangle. The
+     * scale matches the radius of {@code min(width, height) * 0.4} that was
+     * used when laying out directly in device space, so that all pixel based
+     * parameters keep their meaning at the reference size.
+     */
+    public static AffineTransform createViewportTransform(double x, double y, double width, double height) {
+        double rx = (Math.min(width, height) / 2.0d) - (Math.min(width, height) / 10.0d);
+        AffineTransform at = AffineTransform.getTranslateInstance(x + width / 2.0d, y + height / 2.0d);
+        double scale = rx / LAYOUT_RADIUS;
+        at.scale(scale, scale);
+        return at;
     }
 
     public void addTracks(double startAngle, double rx, double centerx, double centery, double segmentSize, double targetMargin, double segmentMargin, double sourceMargin, Map<String, Track<? extends IDrawable>> shapes) {
+        LayoutProfiler profiler = this.profiler;
+        long start = profiler == null ? 0l : System.nanoTime();
+        LayoutProfiler.Stopwatch watch = profiler == null ? null : profiler.start();
         ArrayList<Segment> newshapes = new ArrayList<Segment>();
         ArrayList<Segment> newshapes2 = new ArrayList<Segment>();
         ArrayList<Ticks> newticks = new ArrayList<Ticks>();
-        int n = data.length;
+        int n = matrix.getRows();
         double r = rx - segmentSize - targetMargin;
         double angleIncr = (1.0d / (double) n) * segmentMargin;
 //        System.out.println("Angle increment: " + angleIncr);
@@ -63,7 +134,7 @@ public class RatioLayoutBuilder {
         double localAngle = startAngle;
         for (int i = 0; i < n; i++) {
             double localStartAngle = localAngle;
-            double localEndAngle = localAngle + normalizer.getAngleForSegment(data, i);
+            double localEndAngle = localAngle + normalizer.getAngleForSegment(marginals, i);
             Color startColor = Color.getHSBColor(((float) i / (float) n), 0.5f, 0.9f);
             Segment cs = new Segment("segment" + i, rx - segmentSize, rx, centerx, centery, localStartAngle + angleIncr, localEndAngle - angleIncr, startColor, startColor.darker());
             newshapes.add(cs);
@@ -74,182 +145,541 @@ public class RatioLayoutBuilder {
         }
         Point2D.Double center = new Point2D.Double(centerx, centery);
         Track<Segment> parts = new Track<Segment>(center, rx - segmentSize, rx, newshapes);
+        if (watch != null) {
+            watch.lap(LayoutProfiler.Phase.TRACK_ASSEMBLY);
+        }
+        List<Ribbon> ribbons = createConnectionSegments(parts, rx - segmentSize - sourceMargin, r, centerx, centery);
+        if (watch != null) {
+            watch.restart();
+        }
         shapes.put("Track 1", parts);
-        shapes.put("Track 2", new Track<Ribbon>(center, rx - segmentSize - sourceMargin, r, createConnectionSegments(parts, rx - segmentSize - sourceMargin, r, centerx, centery)));
+        shapes.put("Track 2", new Track<Ribbon>(center, rx - segmentSize - sourceMargin, r, ribbons));
         shapes.put("Track 3", new Track<Ticks>(center, rx, rx + 20, newticks));
         shapes.put("Track 4", new Track<Segment>(center, rx + 20, rx + 60, newshapes2));
+        if (watch != null) {
+            watch.lap(LayoutProfiler.Phase.TRACK_ASSEMBLY);
+            profiler.recordLayout(start);
+        }
     }
 
-    public double[] getRibbonSourceAngles(Segment sourceSegment, double[][] data, int sourceSegmentIndex) {
-        Map<Integer, Integer> rankToIndex = new TreeMap<Integer, Integer>();
-        List<Point2D> ranks = new ArrayList<>();
-        double sum = Utils.getRowSum(data, sourceSegmentIndex);
-        for (int i = 0; i < data[sourceSegmentIndex].length; i++) {
-            Point2D p = new Point2D.Double(i, data[sourceSegmentIndex][i]/sum);
-            System.out.println("Point: "+p);
-            ranks.add(p);
-        }
-        Collections.sort(ranks, Collections.reverseOrder(new Comparator<Point2D>() {
+    /**
+     * Assigns the angular offsets of all ribbons leaving the given source
+     * segment, relative to the segment's start angle. Ribbons are placed in
+     * descending order of their value within the first half of the segment,
+     * ties in ascending column order. Offsets are written to the entry
+     * indices of the source row.
+     */
+    public void getRibbonSourceAngles(Segment sourceSegment, int sourceSegmentIndex, double[] startOffsets, double[] endOffsets) {
+        getRibbonSourceAngles(sourceSegment, sourceSegmentIndex, startOffsets, endOffsets, new Ranking(), null);
+    }
 
-            @Override
-            public int compare(Point2D o1, Point2D o2) {
-                return Double.compare(o1.getY(), o2.getY());
-            }
-        }));
-        for(int i = 0;i<ranks.size();i++) {
-            int index = (int)ranks.get(i).getX();
-            rankToIndex.put(i, index);
-            System.out.println("Rank: "+i+" -> "+index);
+    private void getRibbonSourceAngles(Segment sourceSegment, int sourceSegmentIndex, double[] startOffsets, double[] endOffsets, Ranking ranking, LayoutProfiler.Stopwatch watch) {
+        rankRow(matrix, sourceSegmentIndex, ranking);
+        if (watch != null) {
+            watch.lap(LayoutProfiler.Phase.RANKING);
         }
+        double sum = marginals.getRowSum(sourceSegmentIndex);
         double angleRange = sourceSegment.getEndAngle() - sourceSegment.getStartAngle();
         double offset = 0.0;//sourceSegment.getStartAngle();
-        double[] sourceAngleOffsets = new double[data[0].length + 1];
-        double totalRatio = 0.0d;
-        for (Integer rank : rankToIndex.keySet()) {
-            int index = rankToIndex.get(rank);
-            double ratio = getRibbonSourceRatio(data, sourceSegmentIndex, index);
-//            System.out.println("Ratio: " + ratio);
-            sourceAngleOffsets[index] = offset;
+        for (int i = 0; i < ranking.size(); i++) {
+            int entry = ranking.getId(i);
+            double ratio = ranking.getValue(i) / sum;
+            startOffsets[entry] = offset;
             offset += (ratio * (angleRange / 2.0d));
-            totalRatio += ratio;
+            endOffsets[entry] = offset;
+        }
+        if (watch != null) {
+            watch.lap(LayoutProfiler.Phase.ANGLE_OFFSETS);
         }
-//        System.out.println("Total ratio: " + totalRatio);
-        sourceAngleOffsets[data[0].length] = angleRange / 2;
-        return sourceAngleOffsets;
     }
 
-    public double[] getRibbonTargetAngles(Segment targetSegment, double[][] data, int targetSegmentIndex) {
-        Map<Integer, Integer> rankToIndex = new TreeMap<Integer, Integer>();
-        List<Point2D> ranks = new ArrayList<>();
-        double sum = Utils.getColumnSum(data, targetSegmentIndex);
-        for (int i = 0; i < data[targetSegmentIndex].length; i++) {
-            Point2D p = new Point2D.Double(i, data[i][targetSegmentIndex]/sum);
-            System.out.println("Point: "+p);
-            ranks.add(p);
-        }
-        Collections.sort(ranks, Collections.reverseOrder(new Comparator<Point2D>() {
+    /**
+     * Assigns the angular offsets of all ribbons arriving at the given target
+     * segment, relative to the segment's start angle. Ribbons are placed in
+     * descending order of their value within the second half of the segment,
+     * ties in ascending row order. Offsets are written to the entry indices
+     * of the target column.
+     */
+    public void getRibbonTargetAngles(Segment targetSegment, int targetSegmentIndex, double[] startOffsets, double[] endOffsets) {
+        getRibbonTargetAngles(targetSegment, targetSegmentIndex, startOffsets, endOffsets, new Ranking(), null);
+    }
 
-            @Override
-            public int compare(Point2D o1, Point2D o2) {
-                return Double.compare(o1.getY(), o2.getY());
-            }
-        }));
-        for(int i = 0;i<ranks.size();i++) {
-            int index = (int)ranks.get(i).getX();
-            rankToIndex.put(i, index);
-            System.out.println("Rank: "+i+" -> "+index);
+    private void getRibbonTargetAngles(Segment targetSegment, int targetSegmentIndex, double[] startOffsets, double[] endOffsets, Ranking ranking, LayoutProfiler.Stopwatch watch) {
+        rankColumn(matrix, targetSegmentIndex, ranking);
+        if (watch != null) {
+            watch.lap(LayoutProfiler.Phase.RANKING);
         }
+        double sum = marginals.getColumnSum(targetSegmentIndex);
         double angleRange = targetSegment.getEndAngle() - targetSegment.getStartAngle();
         double offset = angleRange / 2.0d;
-        double[] targetAngleOffsets = new double[data[0].length + 1];
-        for (Integer rank : rankToIndex.keySet()) {
-            int index = rankToIndex.get(rank);
-            double ratio = getRibbonTargetRatio(data, targetSegmentIndex, index);
-//            System.out.println("Ratio: " + ratio);
-            targetAngleOffsets[index] = offset;
+        for (int i = 0; i < ranking.size(); i++) {
+            int entry = ranking.getId(i);
+            double ratio = ranking.getValue(i) / sum;
+            startOffsets[entry] = offset;
             offset += (ratio * (angleRange / 2.0d));
+            endOffsets[entry] = offset;
         }
-        targetAngleOffsets[data[0].length] = angleRange;
+        if (watch != null) {
+            watch.lap(LayoutProfiler.Phase.ANGLE_OFFSETS);
+        }
+    }
+
+    /**
+     * Returns the start offsets of the ribbons leaving the given source
+     * segment by column, the last element holds the end of the first half
+     * of the segment. Columns without a link have no offset, NaN.
+     *
+     * @deprecated ranks the row of the given array on every call, use
+     * {@link #getRibbonSourceAngles(Segment, int, double[], double[])}
+     */
+    @Deprecated
+    public double[] getRibbonSourceAngles(Segment sourceSegment, double[][] data, int sourceSegmentIndex) {
+        Matrix m = new DenseMatrix(data);
+        Ranking ranking = new Ranking(m.getColumns());
+        rankRow(m, sourceSegmentIndex, ranking);
+        double sum = Utils.getRowSum(m, sourceSegmentIndex);
+        double angleRange = sourceSegment.getEndAngle() - sourceSegment.getStartAngle();
+        double[] sourceAngleOffsets = new double[m.getColumns() + 1];
+        Arrays.fill(sourceAngleOffsets, Double.NaN);
+        double offset = 0.0d;
+        for (int i = 0; i < ranking.size(); i++) {
+            sourceAngleOffsets[m.getColumn(ranking.getId(i))] = offset;
+            offset += (ranking.getValue(i) / sum * (angleRange / 2.0d));
+        }
+        sourceAngleOffsets[m.getColumns()] = angleRange / 2;
+        return sourceAngleOffsets;
+    }
+
+    /**
+     * Returns the start offsets of the ribbons arriving at the given target
+     * segment by row, the last element holds the end of the segment. Rows
+     * without a link have no offset, NaN.
+     *
+     * @deprecated ranks the column of the given array on every call, use
+     * {@link #getRibbonTargetAngles(Segment, int, double[], double[])}
+     */
+    @Deprecated
+    public double[] getRibbonTargetAngles(Segment targetSegment, double[][] data, int targetSegmentIndex) {
+        Matrix m = new DenseMatrix(data);
+        Ranking ranking = new Ranking(m.getRows());
+        rankColumn(m, targetSegmentIndex, ranking);
+        double sum = Utils.getColumnSum(m, targetSegmentIndex);
+        double angleRange = targetSegment.getEndAngle() - targetSegment.getStartAngle();
+        double[] targetAngleOffsets = new double[m.getRows() + 1];
+        Arrays.fill(targetAngleOffsets, Double.NaN);
+        double offset = angleRange / 2.0d;
+        for (int i = 0; i < ranking.size(); i++) {
+            targetAngleOffsets[m.getRow(ranking.getId(i))] = offset;
+            offset += (ranking.getValue(i) / sum * (angleRange / 2.0d));
+        }
+        targetAngleOffsets[m.getRows()] = angleRange;
         return targetAngleOffsets;
     }
 
-    public int getRibbonTargetRank(Map<Double, Integer> ribbonTargetRankMap, double[][] data, int targetSegmentIndex, int sourceSegmentIndex) {
-        return ribbonTargetRankMap.get(data[sourceSegmentIndex][targetSegmentIndex]);
+    private static void rankRow(Matrix matrix, int row, Ranking ranking) {
+        ranking.clear();
+        for (int e = matrix.getRowStart(row); e < matrix.getRowEnd(row); e++) {
+            double value = matrix.getValue(e);
+            if (!Double.isNaN(value)) {
+                ranking.add(e, value);
+            }
+        }
+        ranking.sort();
     }
 
-    public Map<Double, Integer> getRibbonTargetRankMap(double[][] data, int targetSegmentIndex) {
-        double[] values = new double[data[0].length];
-        for (int i = 0; i < values.length; i++) {
-            values[i] = data[i][targetSegmentIndex];
+    private static void rankColumn(Matrix matrix, int column, Ranking ranking) {
+        ranking.clear();
+        for (int p = matrix.getColumnStart(column); p < matrix.getColumnEnd(column); p++) {
+            int e = matrix.getColumnEntry(p);
+            double value = matrix.getValue(e);
+            if (!Double.isNaN(value)) {
+                ranking.add(e, value);
+            }
         }
-        Map<Double, Integer> map = new TreeMap<Double, Integer>(Collections.reverseOrder(new Comparator<Double>() {
+        ranking.sort();
+    }
 
-            @Override
-            public int compare(Double o1, Double o2) {
-                return Double.compare(o1, o2);
+    /**
+     * @return the target segment indices of all links leaving the given
+     * source segment, in rank order
+     */
+    public int[] getRibbonSourceOrder(int sourceSegmentIndex) {
+        Ranking ranking = new Ranking();
+        rankRow(matrix, sourceSegmentIndex, ranking);
+        int[] order = new int[ranking.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = matrix.getColumn(ranking.getId(i));
+        }
+        return order;
+    }
+
+    /**
+     * @return the source segment indices of all links arriving at the given
+     * target segment, in rank order
+     */
+    public int[] getRibbonTargetOrder(int targetSegmentIndex) {
+        Ranking ranking = new Ranking();
+        rankColumn(matrix, targetSegmentIndex, ranking);
+        int[] order = new int[ranking.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = matrix.getRow(ranking.getId(i));
+        }
+        return order;
+    }
+
+    /**
+     * @return the rank of the link among all links leaving the source
+     * segment, or -1 if there is no link
+     */
+    public int getRibbonSourceRank(int sourceSegmentIndex, int targetSegmentIndex) {
+        int[] order = getRibbonSourceOrder(sourceSegmentIndex);
+        for (int i = 0; i < order.length; i++) {
+            if (order[i] == targetSegmentIndex) {
+                return i;
             }
-        }));
-        for (int i = 0; i < values.length; ++i) {
-            map.put(values[i], i);
         }
-        return map;
+        return -1;
+    }
+
+    /**
+     * @return the rank of the link among all links arriving at the target
+     * segment, or -1 if there is no link
+     */
+    public int getRibbonTargetRank(int targetSegmentIndex, int sourceSegmentIndex) {
+        int[] order = getRibbonTargetOrder(targetSegmentIndex);
+        for (int i = 0; i < order.length; i++) {
+            if (order[i] == sourceSegmentIndex) {
+                return i;
+            }
+        }
+        return -1;
     }
 
+    /**
+     * Maps the values of the links leaving the source segment, in rank
+     * order, to their target segment index. Tied values share one key and
+     * map to the last of their links.
+     *
+     * @deprecated a map cannot hold tied values apart, use
+     * {@link #getRibbonSourceOrder(int)}
+     */
+    @Deprecated
     public Map<Double, Integer> getRibbonSourceRankMap(double[][] data, int sourceSegmentIndex) {
-        double[] values = data[sourceSegmentIndex];
-        Map<Double, Integer> map = new TreeMap<Double, Integer>(Collections.reverseOrder(new Comparator<Double>() {
+        Matrix m = new DenseMatrix(data);
+        Ranking ranking = new Ranking(m.getColumns());
+        rankRow(m, sourceSegmentIndex, ranking);
+        Map<Double, Integer> map = new LinkedHashMap<Double, Integer>();
+        for (int i = 0; i < ranking.size(); i++) {
+            map.put(ranking.getValue(i), m.getColumn(ranking.getId(i)));
+        }
+        return map;
+    }
 
-            @Override
-            public int compare(Double o1, Double o2) {
-                return Double.compare(o1, o2);
-            }
-        }));
-        for (int i = 0; i < values.length; ++i) {
-            map.put(values[i], i);
+    /**
+     * Maps the values of the links arriving at the target segment, in rank
+     * order, to their source segment index. Tied values share one key and
+     * map to the last of their links.
+     *
+     * @deprecated a map cannot hold tied values apart, use
+     * {@link #getRibbonTargetOrder(int)}
+     */
+    @Deprecated
+    public Map<Double, Integer> getRibbonTargetRankMap(double[][] data, int targetSegmentIndex) {
+        Matrix m = new DenseMatrix(data);
+        Ranking ranking = new Ranking(m.getRows());
+        rankColumn(m, targetSegmentIndex, ranking);
+        Map<Double, Integer> map = new LinkedHashMap<Double, Integer>();
+        for (int i = 0; i < ranking.size(); i++) {
+            map.put(ranking.getValue(i), m.getRow(ranking.getId(i)));
         }
         return map;
     }
 
+    /**
+     * @return the entry of the map for the value of the link, or -1 if there
+     * is no link
+     * @deprecated use {@link #getRibbonSourceRank(int, int)}
+     */
+    @Deprecated
     public int getRibbonSourceRank(Map<Double, Integer> map, double[][] data, int sourceSegmentIndex, int targetSegmentIndex) {
-        return map.get(data[sourceSegmentIndex][targetSegmentIndex]);
+        Integer index = map.get(data[sourceSegmentIndex][targetSegmentIndex]);
+        return index == null ? -1 : index;
     }
 
+    /**
+     * @return the entry of the map for the value of the link, or -1 if there
+     * is no link
+     * @deprecated use {@link #getRibbonTargetRank(int, int)}
+     */
+    @Deprecated
+    public int getRibbonTargetRank(Map<Double, Integer> ribbonTargetRankMap, double[][] data, int targetSegmentIndex, int sourceSegmentIndex) {
+        Integer index = ribbonTargetRankMap.get(data[sourceSegmentIndex][targetSegmentIndex]);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @deprecated sums the row of the given array on every call, use
+     * {@link #getRibbonSourceRatio(int, int)}
+     */
+    @Deprecated
     public double getRibbonSourceRatio(double[][] data, int sourceSegmentIndex, int targetSegmentIndex) {
-        double rowSum = Utils.getRowSum(data, sourceSegmentIndex);
-//        System.out.println("Row sum: " + rowSum);
-        return data[sourceSegmentIndex][targetSegmentIndex] / rowSum;
+        return data[sourceSegmentIndex][targetSegmentIndex] / Utils.getRowSum(new DenseMatrix(data), sourceSegmentIndex);
     }
 
+    /**
+     * @deprecated sums the column of the given array on every call, use
+     * {@link #getRibbonTargetRatio(int, int)}
+     */
+    @Deprecated
     public double getRibbonTargetRatio(double[][] data, int sourceSegmentIndex, int targetSegmentIndex) {
-        double colSum = Utils.getColumnSum(data, targetSegmentIndex);
+        return data[sourceSegmentIndex][targetSegmentIndex] / Utils.getColumnSum(new DenseMatrix(data), targetSegmentIndex);
+    }
+
+    public double getRibbonSourceRatio(int sourceSegmentIndex, int targetSegmentIndex) {
+        double rowSum = marginals.getRowSum(sourceSegmentIndex);
+//        System.out.println("Row sum: " + rowSum);
+        return matrix.get(sourceSegmentIndex, targetSegmentIndex) / rowSum;
+    }
+
+    public double getRibbonTargetRatio(int sourceSegmentIndex, int targetSegmentIndex) {
+        double colSum = marginals.getColumnSum(targetSegmentIndex);
 //        System.out.println("Col sum: " + colSum);
-        return data[sourceSegmentIndex][targetSegmentIndex] / colSum;
+        return matrix.get(sourceSegmentIndex, targetSegmentIndex) / colSum;
     }
 
-    public List<Ribbon> createConnectionSegments(Track<Segment> circleSegment, double sourceRadius, double targetRadius, double centerx, double centery) {
-        ArrayList<Ribbon> connectionSegments = new ArrayList<Ribbon>();
-        double[][] sourceOffsets = new double[data.length][data[0].length];
-        double[][] targetOffsets = new double[data.length][data[0].length];
-        for (int i = 0; i < data.length; i++) {
-            sourceOffsets[i] = getRibbonSourceAngles(circleSegment.getChildren().get(i), data, i);
+    /**
+     * Sets the pool used to lay out ribbons in parallel. The source angle,
+     * target angle and ribbon passes are split into blocks of rows (columns)
+     * that are processed as fork/join tasks. Output is identical to the
+     * serial layout. Passing {@code null} selects the serial layout.
+     *
+     * @param forkJoinPool the pool, or null for serial layout
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * @param rowBlockSize the maximum number of rows per parallel task
+     */
+    public void setRowBlockSize(int rowBlockSize) {
+        if (rowBlockSize < 1) {
+            throw new IllegalArgumentException("Row block size must be positive: " + rowBlockSize);
         }
-        for (int j = 0; j < data[0].length; j++) {
-            targetOffsets[j] = getRibbonTargetAngles(circleSegment.getChildren().get(j), data, j);
+        this.rowBlockSize = rowBlockSize;
+    }
+
+    public int getRowBlockSize() {
+        return rowBlockSize;
+    }
+
+    /**
+     * @param profiler the profiler for the following layouts, or null to
+     * switch profiling off
+     */
+    public void setProfiler(LayoutProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public LayoutProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Creates the ribbons between all linked segments. If the calling thread
+     * is interrupted, the layout is abandoned with a
+     * {@link CancellationException}, also when running on a fork/join pool.
+     */
+    public List<Ribbon> createConnectionSegments(Track<Segment> circleSegment, final double sourceRadius, final double targetRadius, final double centerx, final double centery) {
+        final Thread caller = Thread.currentThread();
+        final List<Segment> segments = circleSegment.getChildren();
+        int entries = matrix.getEntryCount();
+        final double[] sourceStartOffsets = new double[entries];
+        final double[] sourceEndOffsets = new double[entries];
+        final double[] targetStartOffsets = new double[entries];
+        final double[] targetEndOffsets = new double[entries];
+        final LayoutProfiler profiler = this.profiler;
+        RowBlock sourcePass = new RowBlock() {
+
+            @Override
+            public void run(int from, int to) {
+                Ranking ranking = new Ranking();
+                LayoutProfiler.Stopwatch watch = profiler == null ? null : profiler.start();
+                for (int i = from; i < to; i++) {
+                    checkCancelled(caller);
+                    getRibbonSourceAngles(segments.get(i), i, sourceStartOffsets, sourceEndOffsets, ranking, watch);
+                }
+            }
+        };
+        RowBlock targetPass = new RowBlock() {
+
+            @Override
+            public void run(int from, int to) {
+                Ranking ranking = new Ranking();
+                LayoutProfiler.Stopwatch watch = profiler == null ? null : profiler.start();
+                for (int j = from; j < to; j++) {
+                    checkCancelled(caller);
+                    getRibbonTargetAngles(segments.get(j), j, targetStartOffsets, targetEndOffsets, ranking, watch);
+                }
+            }
+        };
+        //the ribbons of a row are stored in one range of the table
+        final int[] rowOffsets = new int[matrix.getRows() + 1];
+        for (int i = 0; i < matrix.getRows(); i++) {
+            checkCancelled(caller);
+            rowOffsets[i + 1] = rowOffsets[i] + countRibbons(i);
         }
-        for (int i = 0; i < data.length; i++) {
-            Segment rowSegment = circleSegment.getChildren().get(i);
-//            System.out.println("Row has " + i + " has " + rowSum + " outgoing edges!");
-//            System.out.println("Column " + i + " has " + rowSum + " incoming edges!");
-            for (int j = 0; j < data[i].length; j++) {
-                if (!Double.isNaN(data[i][j]) && !Double.isNaN(data[j][i])) {
-                    Segment columnSegment = circleSegment.getChildren().get(j);
-                    Connection c = new Connection();
-                    c.sourceIndex = i;
-                    c.targetIndex = j;
-                    c.source = rowSegment;
-                    c.target = columnSegment;
-                    c.centerx = centerx;
-                    c.centery = centery;
-                    c.sourceValue = data[i][j];
-                    c.targetValue = data[j][i];
-                    c.sourceRadius = sourceRadius;
-                    c.targetRadius = targetRadius;
-                    c.sourceStartAngle = rowSegment.getStartAngle() + sourceOffsets[i][j];
-                    c.sourceEndAngle = rowSegment.getStartAngle() + sourceOffsets[i][j + 1];
-                    c.targetStartAngle = columnSegment.getStartAngle() + targetOffsets[j][i];
-                    c.targetEndAngle = columnSegment.getStartAngle() + targetOffsets[j][i + 1];
-//                    sourceStartAngle+=sourceOffsets[i][j];
-                    try {
-                        connectionSegments.add(c.createRibbon());
-                    } catch (Exception | Error e) {
-                        System.err.println("Could not create ribbon for " + i + ", " + j + " = " + data[i][j]);
+        final RibbonTable table = new RibbonTable(rowOffsets[matrix.getRows()], centerx, centery, targetRadius, sourceRadius - 10, sourceRadius - 10, sourceRadius);
+        final Ribbon[] ribbons = new Ribbon[table.size()];
+        RowBlock ribbonPass = new RowBlock() {
+
+            @Override
+            public void run(int from, int to) {
+                LayoutProfiler.Stopwatch watch = profiler == null ? null : profiler.start();
+                for (int i = from; i < to; i++) {
+                    checkCancelled(caller);
+                    createRibbons(segments, i, sourceRadius, targetRadius, centerx, centery,
+                            sourceStartOffsets, sourceEndOffsets, targetStartOffsets, targetEndOffsets, table, ribbons, rowOffsets[i]);
+                    if (watch != null) {
+                        watch.lap(LayoutProfiler.Phase.RIBBON_SHAPES);
                     }
                 }
             }
+        };
+        //one pool and block size for all passes of this layout
+        ForkJoinPool pool = forkJoinPool;
+        int blockSize = rowBlockSize;
+        if (pool == null) {
+            sourcePass.run(0, matrix.getRows());
+            targetPass.run(0, matrix.getColumns());
+            ribbonPass.run(0, matrix.getRows());
+        } else {
+            final BlockTask sourceTask = new BlockTask(sourcePass, 0, matrix.getRows(), blockSize);
+            final BlockTask targetTask = new BlockTask(targetPass, 0, matrix.getColumns(), blockSize);
+            pool.invoke(new RecursiveAction() {
+
+                @Override
+                protected void compute() {
+                    invokeAll(sourceTask, targetTask);
+                }
+            });
+            pool.invoke(new BlockTask(ribbonPass, 0, matrix.getRows(), blockSize));
+        }
+        LayoutProfiler.Stopwatch watch = profiler == null ? null : profiler.start();
+        ArrayList<Ribbon> connectionSegments = new ArrayList<Ribbon>(ribbons.length);
+        for (Ribbon ribbon : ribbons) {
+            //null if the ribbon could not be created
+            if (ribbon != null) {
+                connectionSegments.add(ribbon);
+            }
+        }
+        if (watch != null) {
+            watch.lap(LayoutProfiler.Phase.TRACK_ASSEMBLY);
         }
         return connectionSegments;
     }
 
+    private static void checkCancelled(Thread caller) {
+        if (caller.isInterrupted()) {
+            throw new CancellationException("Layout was cancelled");
+        }
+    }
+
+    /**
+     * @return the number of ribbons leaving the row, links that have a link
+     * in the opposite direction
+     */
+    private int countRibbons(int i) {
+        int count = 0;
+        for (int e = matrix.getRowStart(i); e < matrix.getRowEnd(i); e++) {
+            if (!Double.isNaN(matrix.getValue(e)) && matrix.getEntry(matrix.getColumn(e), i) >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates the ribbons of a row in the table, starting at the given
+     * index.
+     */
+    private void createRibbons(List<Segment> segments, int i, double sourceRadius, double targetRadius, double centerx, double centery, double[] sourceStartOffsets, double[] sourceEndOffsets, double[] targetStartOffsets, double[] targetEndOffsets, RibbonTable table, Ribbon[] ribbons, int index) {
+        Segment rowSegment = segments.get(i);
+//            System.out.println("Row has " + i + " has " + rowSum + " outgoing edges!");
+//            System.out.println("Column " + i + " has " + rowSum + " incoming edges!");
+        for (int e = matrix.getRowStart(i); e < matrix.getRowEnd(i); e++) {
+            double value = matrix.getValue(e);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            int j = matrix.getColumn(e);
+            int reverse = matrix.getEntry(j, i);
+            if (reverse >= 0) {
+                Segment columnSegment = segments.get(j);
+                Connection c = new Connection();
+                c.sourceIndex = i;
+                c.targetIndex = j;
+                c.source = rowSegment;
+                c.target = columnSegment;
+                c.centerx = centerx;
+                c.centery = centery;
+                c.sourceValue = value;
+                c.targetValue = matrix.getValue(reverse);
+                c.sourceRadius = sourceRadius;
+                c.targetRadius = targetRadius;
+                c.sourceStartAngle = rowSegment.getStartAngle() + sourceStartOffsets[e];
+                c.sourceEndAngle = rowSegment.getStartAngle() + sourceEndOffsets[e];
+                c.targetStartAngle = columnSegment.getStartAngle() + targetStartOffsets[e];
+                c.targetEndAngle = columnSegment.getStartAngle() + targetEndOffsets[e];
+                try {
+                    ribbons[index] = c.createRibbon(table, index);
+                } catch (Exception | Error ex) {
+                    Logger.getLogger(RatioLayoutBuilder.class.getName()).log(Level.SEVERE, "Could not create ribbon for " + i + ", " + j + " = " + value, ex);
+                }
+                index++;
+            }
+        }
+    }
+
+    /**
+     * A unit of layout work over a half-open range of rows or columns.
+     */
+    private interface RowBlock {
+
+        void run(int from, int to);
+    }
+
+    /**
+     * Splits a {@link RowBlock} range in halves until it is at most
+     * blockSize wide.
+     */
+    private static final class BlockTask extends RecursiveAction {
+
+        private final RowBlock block;
+        private final int from, to, blockSize;
+
+        BlockTask(RowBlock block, int from, int to, int blockSize) {
+            this.block = block;
+            this.from = from;
+            this.to = to;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= blockSize) {
+                block.run(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BlockTask(block, from, mid, blockSize), new BlockTask(block, mid, to, blockSize));
+            }
+        }
+    }
+
     public class Connection {
 
         int sourceIndex, targetIndex;
@@ -263,12 +693,16 @@ public class RatioLayoutBuilder {
         boolean colorBySource = false;
 
         public Ribbon createRibbon() {
+            return createRibbon(new RibbonTable(1, centerx, centery, targetRadius, sourceRadius - 10, sourceRadius - 10, sourceRadius), 0);
+        }
 
-            Ribbon connection = new Ribbon(
-                    targetRadius, sourceRadius, centerx, centery,
-                    source, target,
-                    sourceStartAngle, sourceEndAngle,
-                    targetStartAngle, targetEndAngle);
+        /**
+         * Creates the ribbon in a row of a table with the radii of this
+         * connection.
+         */
+        public Ribbon createRibbon(RibbonTable table, int index) {
+            table.set(index, sourceStartAngle, sourceEndAngle, targetStartAngle, targetEndAngle, target.getFill(), target.getOutline());
+            Ribbon connection = new Ribbon(table, index);
             if (colorBySource) {
                 connection.setFill(source.getFill());
                 connection.setOutline(source.getOutline());
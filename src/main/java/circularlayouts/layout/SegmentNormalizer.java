@@ -21,13 +21,31 @@ package circularlayouts.layout;
  */
 public abstract class SegmentNormalizer {
 
-    public abstract double getAngleForSegment(double[][] data, int segment);
+    /**
+     * @param marginals the sums of the matrix, computed once per layout
+     * @param segment the index of the segment
+     * @return the fraction of the circle taken by the segment
+     */
+    public abstract double getAngleForSegment(MatrixMarginals marginals, int segment);
+
+    /**
+     * Computes the sums of the whole matrix on every call, which takes time
+     * proportional to its size. Calling it for every segment is quadratic in
+     * the number of cells.
+     *
+     * @deprecated compute the {@link MatrixMarginals} once and use
+     * {@link #getAngleForSegment(MatrixMarginals, int)}
+     */
+    @Deprecated
+    public double getAngleForSegment(double[][] data, int segment) {
+        return getAngleForSegment(new MatrixMarginals(data), segment);
+    }
 
     public static final class Equal extends SegmentNormalizer {
 
         @Override
-        public double getAngleForSegment(double[][] data, int segment) {
-            return 1.0d / (double) data.length;
+        public double getAngleForSegment(MatrixMarginals marginals, int segment) {
+            return 1.0d / (double) marginals.getRows();
         }
 
     }
@@ -35,26 +53,16 @@ public abstract class SegmentNormalizer {
     public static final class ProportionalToRowSum extends SegmentNormalizer {
 
         @Override
-        public double getAngleForSegment(double[][] data, int segment) {
-            double allSum = 0.0d;
-            for (int i = 0; i < data.length; i++) {
-                allSum += Utils.getRowSum(data, i);
-            }
-            double rowSum = Utils.getRowSum(data, segment);
-            return rowSum / allSum;
+        public double getAngleForSegment(MatrixMarginals marginals, int segment) {
+            return marginals.getRowSum(segment) / marginals.getTotal();
         }
     }
 
     public static final class ProportionalToColumnSum extends SegmentNormalizer {
 
         @Override
-        public double getAngleForSegment(double[][] data, int segment) {
-            double allSum = 0.0d;
-            for (int i = 0; i < data[0].length; i++) {
-                allSum += Utils.getColumnSum(data, i);
-            }
-            double colSum = Utils.getColumnSum(data, segment);
-            return colSum / allSum;
+        public double getAngleForSegment(MatrixMarginals marginals, int segment) {
+            return marginals.getColumnSum(segment) / marginals.getTotal();
         }
     }
 }
@@ -0,0 +1,243 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.layout;
+
+import java.util.Arrays;
+
+/**
+ * {@link Matrix} in compressed sparse row (CSR) format. Only non-empty links
+ * are stored, a transposed index allows column traversal without scanning
+ * rows. Instances are created from coordinate (COO) triples with a
+ * {@link Builder} or from a dense matrix with {@link #fromDense(double[][])}.
+ *
+ * @author Nils Hoffmann
+ */
+public class SparseMatrix implements Matrix {
+
+    private final int rows;
+    private final int columns;
+    private final int[] rowPointers;
+    private final int[] rowIndices;
+    private final int[] columnIndices;
+    private final double[] values;
+    private final int[] columnPointers;
+    private final int[] columnEntries;
+
+    private SparseMatrix(int rows, int columns, int[] rowPointers, int[] rowIndices, int[] columnIndices, double[] values) {
+        this.rows = rows;
+        this.columns = columns;
+        this.rowPointers = rowPointers;
+        this.rowIndices = rowIndices;
+        this.columnIndices = columnIndices;
+        this.values = values;
+        int nnz = values.length;
+        //transposed index, entries of each column in ascending row order
+        columnPointers = new int[columns + 1];
+        for (int e = 0; e < nnz; e++) {
+            columnPointers[columnIndices[e] + 1]++;
+        }
+        for (int j = 0; j < columns; j++) {
+            columnPointers[j + 1] += columnPointers[j];
+        }
+        columnEntries = new int[nnz];
+        int[] next = Arrays.copyOf(columnPointers, columns);
+        for (int e = 0; e < nnz; e++) {
+            columnEntries[next[columnIndices[e]]++] = e;
+        }
+    }
+
+    public static SparseMatrix fromDense(double[][] data) {
+        int rows = data.length;
+        int columns = rows == 0 ? 0 : data[0].length;
+        Builder builder = new Builder(rows, columns);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                builder.add(i, j, data[i][j]);
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getColumns() {
+        return columns;
+    }
+
+    @Override
+    public double get(int row, int column) {
+        int entry = getEntry(row, column);
+        if (entry < 0) {
+            return Double.NaN;
+        }
+        return values[entry];
+    }
+
+    @Override
+    public int getEntryCount() {
+        return values.length;
+    }
+
+    @Override
+    public int getRowStart(int row) {
+        return rowPointers[row];
+    }
+
+    @Override
+    public int getRowEnd(int row) {
+        return rowPointers[row + 1];
+    }
+
+    @Override
+    public int getColumnStart(int column) {
+        return columnPointers[column];
+    }
+
+    @Override
+    public int getColumnEnd(int column) {
+        return columnPointers[column + 1];
+    }
+
+    @Override
+    public int getColumnEntry(int position) {
+        return columnEntries[position];
+    }
+
+    @Override
+    public int getRow(int entry) {
+        return rowIndices[entry];
+    }
+
+    @Override
+    public int getColumn(int entry) {
+        return columnIndices[entry];
+    }
+
+    @Override
+    public double getValue(int entry) {
+        return values[entry];
+    }
+
+    @Override
+    public int getEntry(int row, int column) {
+        int index = Arrays.binarySearch(columnIndices, rowPointers[row], rowPointers[row + 1], column);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Collects coordinate (COO) triples. NaN values are dropped, duplicate
+     * cells are summed.
+     */
+    public static final class Builder {
+
+        private final int rows;
+        private final int columns;
+        private int size = 0;
+        private int[] rowIndices;
+        private int[] columnIndices;
+        private double[] values;
+
+        public Builder(int rows, int columns) {
+            this(rows, columns, 16);
+        }
+
+        public Builder(int rows, int columns, int expectedEntries) {
+            this.rows = rows;
+            this.columns = columns;
+            int capacity = Math.max(1, expectedEntries);
+            rowIndices = new int[capacity];
+            columnIndices = new int[capacity];
+            values = new double[capacity];
+        }
+
+        public Builder add(int row, int column, double value) {
+            if (row < 0 || row >= rows || column < 0 || column >= columns) {
+                throw new IndexOutOfBoundsException("Cell " + row + ", " + column + " is outside of " + rows + "x" + columns);
+            }
+            if (Double.isNaN(value)) {
+                return this;
+            }
+            if (size == values.length) {
+                int capacity = size + (size >> 1) + 1;
+                rowIndices = Arrays.copyOf(rowIndices, capacity);
+                columnIndices = Arrays.copyOf(columnIndices, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            rowIndices[size] = row;
+            columnIndices[size] = column;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        public SparseMatrix build() {
+            //two stable counting sorts, by column and then by row
+            int[] byColumn = countingSort(columnIndices, identity(size), columns);
+            int[] order = countingSort(rowIndices, byColumn, rows);
+            int[] rowPointers = new int[rows + 1];
+            int[] sortedRows = new int[size];
+            int[] sortedColumns = new int[size];
+            double[] sortedValues = new double[size];
+            int nnz = 0;
+            for (int k = 0; k < size; k++) {
+                int e = order[k];
+                if (nnz > 0 && sortedRows[nnz - 1] == rowIndices[e] && sortedColumns[nnz - 1] == columnIndices[e]) {
+                    sortedValues[nnz - 1] += values[e];
+                } else {
+                    sortedRows[nnz] = rowIndices[e];
+                    sortedColumns[nnz] = columnIndices[e];
+                    sortedValues[nnz] = values[e];
+                    rowPointers[rowIndices[e] + 1]++;
+                    nnz++;
+                }
+            }
+            for (int i = 0; i < rows; i++) {
+                rowPointers[i + 1] += rowPointers[i];
+            }
+            return new SparseMatrix(rows, columns, rowPointers,
+                    Arrays.copyOf(sortedRows, nnz),
+                    Arrays.copyOf(sortedColumns, nnz),
+                    Arrays.copyOf(sortedValues, nnz));
+        }
+
+        private static int[] identity(int size) {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            return order;
+        }
+
+        private static int[] countingSort(int[] keys, int[] order, int range) {
+            int[] counts = new int[range + 1];
+            for (int k = 0; k < order.length; k++) {
+                counts[keys[order[k]] + 1]++;
+            }
+            for (int i = 0; i < range; i++) {
+                counts[i + 1] += counts[i];
+            }
+            int[] sorted = new int[order.length];
+            for (int k = 0; k < order.length; k++) {
+                sorted[counts[keys[order[k]]]++] = order[k];
+            }
+            return sorted;
+        }
+    }
+}
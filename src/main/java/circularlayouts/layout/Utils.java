@@ -100,4 +100,46 @@ public class Utils {
         }
         return sum;
     }
+
+    public static double getRowSum(Matrix matrix, int row) {
+        double sum = 0.0d;
+        for (int e = matrix.getRowStart(row); e < matrix.getRowEnd(row); e++) {
+            double value = matrix.getValue(e);
+            if (!Double.isNaN(value)) {
+                sum += value;
+            }
+        }
+        return sum;
+    }
+
+    public static double getRowCount(Matrix matrix, int row) {
+        double sum = 0.0d;
+        for (int e = matrix.getRowStart(row); e < matrix.getRowEnd(row); e++) {
+            if (!Double.isNaN(matrix.getValue(e))) {
+                sum += 1;
+            }
+        }
+        return sum;
+    }
+
+    public static double getColumnSum(Matrix matrix, int column) {
+        double sum = 0.0d;
+        for (int p = matrix.getColumnStart(column); p < matrix.getColumnEnd(column); p++) {
+            double value = matrix.getValue(matrix.getColumnEntry(p));
+            if (!Double.isNaN(value)) {
+                sum += value;
+            }
+        }
+        return sum;
+    }
+
+    public static double getColumnCount(Matrix matrix, int column) {
+        double sum = 0.0d;
+        for (int p = matrix.getColumnStart(column); p < matrix.getColumnEnd(column); p++) {
+            if (!Double.isNaN(matrix.getValue(matrix.getColumnEntry(p)))) {
+                sum += 1;
+            }
+        }
+        return sum;
+    }
 }
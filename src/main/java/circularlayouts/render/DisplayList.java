@@ -0,0 +1,711 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.render;
+
+import circularlayouts.IDrawable;
+import circularlayouts.tracks.AnnularSector;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A recorded sequence of drawing operations that can be replayed into any
+ * graphics, e.g. the screen, an image or an {@link SvgGraphics2D}. Paths are
+ * kept as segment types and coordinates in primitive arrays, transforms as
+ * matrices, and paints, strokes, composites and fonts as shared references,
+ * so a replay does none of the geometry or label computations of the
+ * drawables. An {@link SvgGraphics2D} writes the recorded paths straight from
+ * the arrays. Into a raster target a replay costs about as much as drawing,
+ * the gain there is a snapshot that is independent of the live drawables.
+ *
+ * Paint, stroke, composite and font that were not changed while recording
+ * are taken from the target at replay, as are its transform and clip, to
+ * which the recorded ones are relative. A display list is immutable and may
+ * be replayed from several threads at once.
+ *
+ * @author Nils Hoffmann
+ */
+public final class DisplayList {
+
+    private static final byte FILL = 0;
+    private static final byte DRAW = 1;
+    private static final byte TRANSFORM = 2;
+    private static final byte PAINT = 3;
+    private static final byte STROKE = 4;
+    private static final byte COMPOSITE = 5;
+    private static final byte FONT = 6;
+    private static final byte CLIP = 7;
+    private static final byte STRING = 8;
+    private static final byte IMAGE = 9;
+
+    //the operations and their arguments, in order
+    private final byte[] ops;
+    private final int[] args;
+    //per path the offsets of its segments and coordinates, or a shape reference
+    private final int[] pathSegments;
+    private final int[] pathCoords;
+    private final int[] pathRefs;
+    private final byte[] segmentTypes;
+    private final float[] coords;
+    private final double[] matrices;
+    private final Object[] refs;
+
+    private DisplayList(Builder b) {
+        this.ops = Arrays.copyOf(b.ops, b.opCount);
+        this.args = Arrays.copyOf(b.args, b.argCount);
+        this.pathSegments = Arrays.copyOf(b.pathSegments, b.pathCount + 1);
+        this.pathCoords = Arrays.copyOf(b.pathCoords, b.pathCount + 1);
+        this.pathRefs = Arrays.copyOf(b.pathRefs, b.pathCount);
+        this.segmentTypes = Arrays.copyOf(b.segmentTypes, b.segmentCount);
+        this.coords = Arrays.copyOf(b.coords, b.coordCount);
+        this.matrices = Arrays.copyOf(b.matrices, b.matrixCount * 6);
+        this.refs = b.refList.toArray();
+    }
+
+    /**
+     * Records the drawables as they are drawn into a graphics with an identity
+     * transform.
+     *
+     * @param drawables the drawables
+     * @return the display list
+     */
+    public static DisplayList record(List<? extends IDrawable> drawables) {
+        Recorder recorder = new Recorder();
+        for (IDrawable d : drawables) {
+            d.draw(recorder);
+        }
+        return recorder.toDisplayList();
+    }
+
+    public int getOperationCount() {
+        return ops.length;
+    }
+
+    public int getPathCount() {
+        return pathRefs.length;
+    }
+
+    /**
+     * Replays the operations into the target. The state of the target is
+     * restored afterwards.
+     *
+     * @param g the target
+     */
+    public void replay(Graphics2D g) {
+        AffineTransform base = g.getTransform();
+        Shape baseClip = g.getClip();
+        Paint basePaint = g.getPaint();
+        Stroke baseStroke = g.getStroke();
+        Composite baseComposite = g.getComposite();
+        Font baseFont = g.getFont();
+        AffineTransform at = new AffineTransform();
+        //recorded paths are written from the arrays, without shapes
+        SvgGraphics2D svg = g instanceof SvgGraphics2D ? (SvgGraphics2D) g : null;
+        //a path that is filled and then drawn is passed on as the same shape
+        int lastPath = -1;
+        Shape lastShape = null;
+        int a = 0;
+        for (int i = 0; i < ops.length; i++) {
+            switch (ops[i]) {
+                case FILL:
+                case DRAW: {
+                    int path = args[a++];
+                    if (svg != null && pathRefs[path] < 0) {
+                        if (ops[i] == FILL) {
+                            svg.fill(this, path);
+                        } else {
+                            svg.draw(this, path);
+                        }
+                        break;
+                    }
+                    if (path != lastPath) {
+                        lastPath = path;
+                        lastShape = pathRefs[path] >= 0 ? (Shape) refs[pathRefs[path]] : new RecordedPath(path);
+                    }
+                    if (ops[i] == FILL) {
+                        g.fill(lastShape);
+                    } else {
+                        g.draw(lastShape);
+                    }
+                    break;
+                }
+                case TRANSFORM: {
+                    int m = args[a++] * 6;
+                    at.setTransform(matrices[m], matrices[m + 1], matrices[m + 2], matrices[m + 3], matrices[m + 4], matrices[m + 5]);
+                    g.setTransform(base);
+                    g.transform(at);
+                    break;
+                }
+                case PAINT: {
+                    int ref = args[a++];
+                    g.setPaint(ref < 0 ? basePaint : (Paint) refs[ref]);
+                    break;
+                }
+                case STROKE: {
+                    int ref = args[a++];
+                    g.setStroke(ref < 0 ? baseStroke : (Stroke) refs[ref]);
+                    break;
+                }
+                case COMPOSITE: {
+                    int ref = args[a++];
+                    g.setComposite(ref < 0 ? baseComposite : (Composite) refs[ref]);
+                    break;
+                }
+                case FONT: {
+                    int ref = args[a++];
+                    g.setFont(ref < 0 ? baseFont : (Font) refs[ref]);
+                    break;
+                }
+                case CLIP: {
+                    int ref = args[a++];
+                    //recorded clips are in the space of the target's transform
+                    g.setTransform(base);
+                    g.setClip(baseClip);
+                    if (ref >= 0) {
+                        g.clip((Shape) refs[ref]);
+                    }
+                    g.transform(at);
+                    break;
+                }
+                case STRING: {
+                    String s = (String) refs[args[a++]];
+                    int c = args[a++];
+                    g.drawString(s, coords[c], coords[c + 1]);
+                    break;
+                }
+                case IMAGE: {
+                    Image img = (Image) refs[args[a++]];
+                    int m = args[a++] * 6;
+                    g.drawImage(img, new AffineTransform(matrices[m], matrices[m + 1], matrices[m + 2], matrices[m + 3], matrices[m + 4], matrices[m + 5]), null);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown operation " + ops[i]);
+            }
+        }
+        g.setTransform(base);
+        g.setClip(baseClip);
+        g.setPaint(basePaint);
+        g.setStroke(baseStroke);
+        g.setComposite(baseComposite);
+        g.setFont(baseFont);
+    }
+
+    /**
+     * @return a shape for a recorded path
+     */
+    Shape getPath(int path) {
+        return new RecordedPath(path);
+    }
+
+    int getWindingRule(int path) {
+        //the winding rule is kept in the highest bit of the first type
+        int from = pathSegments[path];
+        return from < pathSegments[path + 1] && (segmentTypes[from] & 0x80) != 0 ? PathIterator.WIND_EVEN_ODD : PathIterator.WIND_NON_ZERO;
+    }
+
+    /**
+     * @return the index of the first segment of the path, or the end of the
+     * last path
+     */
+    int getSegmentOffset(int path) {
+        return pathSegments[path];
+    }
+
+    /**
+     * @return the path iterator type of the segment
+     */
+    int getSegmentType(int segment) {
+        return segmentTypes[segment] & 0x7F;
+    }
+
+    /**
+     * @return the index of the first coordinate of the path, or the end of
+     * the last path
+     */
+    int getCoordOffset(int path) {
+        return pathCoords[path];
+    }
+
+    /**
+     * Transforms the points between the coordinate indices into the
+     * destination, starting at its beginning.
+     */
+    void transformCoords(int from, int to, AffineTransform at, double[] dst) {
+        at.transform(coords, from, dst, 0, (to - from) / 2);
+    }
+
+    /**
+     * A recorded path, read directly from the arrays of the display list.
+     */
+    private final class RecordedPath implements Shape {
+
+        private final int path;
+        private Path2D.Float shape;
+
+        RecordedPath(int path) {
+            this.path = path;
+        }
+
+        /**
+         * @return a copy of the path for containment tests, which are not
+         * used when rendering
+         */
+        private Path2D.Float toPath() {
+            if (shape == null) {
+                shape = new Path2D.Float(getWindingRule(), pathSegments[path + 1] - pathSegments[path]);
+                shape.append(getPathIterator(null), false);
+            }
+            return shape;
+        }
+
+        private int getWindingRule() {
+            return DisplayList.this.getWindingRule(path);
+        }
+
+        @Override
+        public Rectangle getBounds() {
+            return getBounds2D().getBounds();
+        }
+
+        @Override
+        public Rectangle2D getBounds2D() {
+            int from = pathCoords[path];
+            int to = pathCoords[path + 1];
+            if (from == to) {
+                return new Rectangle2D.Float();
+            }
+            float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+            float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i += 2) {
+                x0 = Math.min(x0, coords[i]);
+                x1 = Math.max(x1, coords[i]);
+                y0 = Math.min(y0, coords[i + 1]);
+                y1 = Math.max(y1, coords[i + 1]);
+            }
+            return new Rectangle2D.Float(x0, y0, x1 - x0, y1 - y0);
+        }
+
+        @Override
+        public boolean contains(double x, double y) {
+            return toPath().contains(x, y);
+        }
+
+        @Override
+        public boolean contains(Point2D p) {
+            return toPath().contains(p);
+        }
+
+        @Override
+        public boolean intersects(double x, double y, double w, double h) {
+            return toPath().intersects(x, y, w, h);
+        }
+
+        @Override
+        public boolean intersects(Rectangle2D r) {
+            return toPath().intersects(r);
+        }
+
+        @Override
+        public boolean contains(double x, double y, double w, double h) {
+            return toPath().contains(x, y, w, h);
+        }
+
+        @Override
+        public boolean contains(Rectangle2D r) {
+            return toPath().contains(r);
+        }
+
+        @Override
+        public PathIterator getPathIterator(final AffineTransform at) {
+            final int from = pathSegments[path];
+            final int to = pathSegments[path + 1];
+            final int coordFrom = pathCoords[path];
+            final int winding = getWindingRule();
+            return new PathIterator() {
+
+                private int segment = from;
+                private int coord = coordFrom;
+
+                @Override
+                public int getWindingRule() {
+                    return winding;
+                }
+
+                @Override
+                public boolean isDone() {
+                    return segment >= to;
+                }
+
+                @Override
+                public void next() {
+                    coord += 2 * points(segmentTypes[segment] & 0x7F);
+                    segment++;
+                }
+
+                @Override
+                public int currentSegment(float[] c) {
+                    int type = segmentTypes[segment] & 0x7F;
+                    int n = points(type);
+                    if (at == null) {
+                        System.arraycopy(coords, coord, c, 0, 2 * n);
+                    } else {
+                        at.transform(coords, coord, c, 0, n);
+                    }
+                    return type;
+                }
+
+                @Override
+                public int currentSegment(double[] c) {
+                    int type = segmentTypes[segment] & 0x7F;
+                    int n = points(type);
+                    if (at == null) {
+                        for (int i = 0; i < 2 * n; i++) {
+                            c[i] = coords[coord + i];
+                        }
+                    } else {
+                        at.transform(coords, coord, c, 0, n);
+                    }
+                    return type;
+                }
+            };
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at, double flatness) {
+            return new FlatteningPathIterator(getPathIterator(at), flatness);
+        }
+    }
+
+    private static int points(int type) {
+        switch (type) {
+            case PathIterator.SEG_MOVETO:
+            case PathIterator.SEG_LINETO:
+                return 1;
+            case PathIterator.SEG_QUADTO:
+                return 2;
+            case PathIterator.SEG_CUBICTO:
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * The growing arrays of a recording and the state that was last
+     * recorded, shared by a recorder and the graphics created from it.
+     */
+    private static class Builder {
+
+        private byte[] ops = new byte[256];
+        private int opCount;
+        private int[] args = new int[256];
+        private int argCount;
+        private int[] pathSegments = new int[65];
+        private int[] pathCoords = new int[65];
+        private int[] pathRefs = new int[64];
+        private int pathCount;
+        private byte[] segmentTypes = new byte[1024];
+        private int segmentCount;
+        private float[] coords = new float[4096];
+        private int coordCount;
+        private double[] matrices = new double[6 * 16];
+        private int matrixCount;
+        private final Map<Object, Integer> refIndex = new HashMap<Object, Integer>();
+        private final List<Object> refList = new ArrayList<Object>();
+        //the state of the target at replay
+        private final Paint initialPaint;
+        private final Stroke initialStroke;
+        private final Composite initialComposite;
+        private final Font initialFont;
+        //the state last recorded
+        private final AffineTransform transform = new AffineTransform();
+        private Paint paint;
+        private Stroke stroke;
+        private Composite composite;
+        private Font font;
+        private Shape clip;
+        private Shape lastShape;
+        private final Graphics2D scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+
+        Builder(Paint paint, Stroke stroke, Composite composite, Font font) {
+            this.initialPaint = paint;
+            this.initialStroke = stroke;
+            this.initialComposite = composite;
+            this.initialFont = font;
+            this.paint = paint;
+            this.stroke = stroke;
+            this.composite = composite;
+            this.font = font;
+        }
+
+        void op(byte op, int arg) {
+            if (opCount == ops.length) {
+                ops = Arrays.copyOf(ops, 2 * ops.length);
+            }
+            ops[opCount++] = op;
+            arg(arg);
+        }
+
+        void arg(int arg) {
+            if (argCount == args.length) {
+                args = Arrays.copyOf(args, 2 * args.length);
+            }
+            args[argCount++] = arg;
+        }
+
+        int ref(Object o) {
+            Integer index = refIndex.get(o);
+            if (index == null) {
+                index = refList.size();
+                refList.add(o);
+                refIndex.put(o, index);
+            }
+            return index;
+        }
+
+        int matrix(AffineTransform at) {
+            if (6 * (matrixCount + 1) > matrices.length) {
+                matrices = Arrays.copyOf(matrices, 2 * matrices.length);
+            }
+            double[] m = new double[6];
+            at.getMatrix(m);
+            System.arraycopy(m, 0, matrices, 6 * matrixCount, 6);
+            return matrixCount++;
+        }
+
+        int coords(float x, float y) {
+            ensureCoords(2);
+            int c = coordCount;
+            coords[coordCount++] = x;
+            coords[coordCount++] = y;
+            return c;
+        }
+
+        private void ensureCoords(int n) {
+            if (coordCount + n > coords.length) {
+                coords = Arrays.copyOf(coords, Math.max(2 * coords.length, coordCount + n));
+            }
+        }
+
+        /**
+         * @param s the shape
+         * @param outline true, if the shape is drawn, a shape that was just
+         * filled is then not recorded again
+         * @return the index of the path of the shape
+         */
+        int path(Shape s, boolean outline) {
+            if (outline && s == lastShape) {
+                return pathCount - 1;
+            }
+            if (pathCount == pathRefs.length) {
+                int length = 2 * pathRefs.length;
+                pathRefs = Arrays.copyOf(pathRefs, length);
+                pathSegments = Arrays.copyOf(pathSegments, length + 1);
+                pathCoords = Arrays.copyOf(pathCoords, length + 1);
+            }
+            pathSegments[pathCount] = segmentCount;
+            pathCoords[pathCount] = coordCount;
+            if (s instanceof AnnularSector) {
+                //immutable, and it keeps its own outline
+                pathRefs[pathCount] = ref(s);
+            } else {
+                pathRefs[pathCount] = -1;
+                PathIterator pi = s.getPathIterator(null);
+                int first = segmentCount;
+                float[] c = new float[6];
+                while (!pi.isDone()) {
+                    int type = pi.currentSegment(c);
+                    int n = 2 * points(type);
+                    if (segmentCount == segmentTypes.length) {
+                        segmentTypes = Arrays.copyOf(segmentTypes, 2 * segmentTypes.length);
+                    }
+                    segmentTypes[segmentCount++] = (byte) type;
+                    ensureCoords(n);
+                    System.arraycopy(c, 0, coords, coordCount, n);
+                    coordCount += n;
+                    pi.next();
+                }
+                if (segmentCount > first && pi.getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+                    segmentTypes[first] |= 0x80;
+                }
+            }
+            pathCount++;
+            pathSegments[pathCount] = segmentCount;
+            pathCoords[pathCount] = coordCount;
+            lastShape = s;
+            return pathCount - 1;
+        }
+    }
+
+    /**
+     * A graphics that records everything drawn into it. Graphics created from
+     * a recorder record into the same display list.
+     */
+    public static class Recorder extends VectorGraphics2D {
+
+        private final Builder builder;
+
+        /**
+         * Creates a recorder with the default state of a graphics.
+         */
+        public Recorder() {
+            this.paint = inherited(paint);
+            this.color = (Color) paint;
+            this.builder = new Builder(paint, stroke, composite, font);
+        }
+
+        /**
+         * Creates a recorder that starts with the paint, stroke, composite,
+         * font and rendering hints of the template. As long as they are not
+         * changed, a replay uses those of its target instead.
+         *
+         * @param template the graphics to take the state from
+         */
+        public Recorder(Graphics2D template) {
+            this.paint = inherited(template.getPaint());
+            this.color = paint instanceof Color ? (Color) paint : template.getColor();
+            this.background = template.getBackground();
+            this.stroke = template.getStroke();
+            this.composite = template.getComposite();
+            this.font = template.getFont();
+            this.hints = (RenderingHints) template.getRenderingHints().clone();
+            this.builder = new Builder(paint, stroke, composite, font);
+        }
+
+        private Recorder(Recorder r) {
+            super(r);
+            this.builder = r.builder;
+        }
+
+        /**
+         * The initial paint is recognized by identity, so a shared constant
+         * like {@link Color#BLACK} set later on is not mistaken for it.
+         */
+        private static Paint inherited(Paint p) {
+            if (p instanceof Color) {
+                return new Color(((Color) p).getRGB(), true);
+            }
+            return p;
+        }
+
+        /**
+         * @return the operations recorded so far
+         */
+        public DisplayList toDisplayList() {
+            return new DisplayList(builder);
+        }
+
+        @Override
+        public Graphics create() {
+            return new Recorder(this);
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        @Override
+        protected Graphics2D getScratch() {
+            return builder.scratch;
+        }
+
+        @Override
+        public void fill(Shape s) {
+            sync(false, false);
+            int path = builder.path(s, false);
+            builder.op(FILL, path);
+        }
+
+        @Override
+        public void draw(Shape s) {
+            sync(true, false);
+            int path = builder.path(s, true);
+            builder.op(DRAW, path);
+        }
+
+        @Override
+        public void drawString(String str, float x, float y) {
+            sync(false, true);
+            builder.op(STRING, builder.ref(str));
+            builder.arg(builder.coords(x, y));
+        }
+
+        @Override
+        public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+            BufferedImage image = toBufferedImage(img, obs);
+            if (image == null) {
+                return false;
+            }
+            sync(false, false);
+            builder.op(IMAGE, builder.ref(image));
+            builder.arg(builder.matrix(xform == null ? new AffineTransform() : xform));
+            return true;
+        }
+
+        /**
+         * Records the changes of the state since the last operation.
+         */
+        private void sync(boolean withStroke, boolean withFont) {
+            Builder b = builder;
+            if (!b.transform.equals(transform)) {
+                b.transform.setTransform(transform);
+                b.op(TRANSFORM, b.matrix(transform));
+            }
+            if (clip != b.clip) {
+                b.clip = clip;
+                b.op(CLIP, clip == null ? -1 : b.ref(clip));
+            }
+            if (paint != b.paint) {
+                b.paint = paint;
+                b.op(PAINT, paint == b.initialPaint ? -1 : b.ref(paint));
+            }
+            if (composite != b.composite) {
+                b.composite = composite;
+                b.op(COMPOSITE, composite == b.initialComposite ? -1 : b.ref(composite));
+            }
+            if (withStroke && stroke != b.stroke) {
+                b.stroke = stroke;
+                b.op(STROKE, stroke == b.initialStroke ? -1 : b.ref(stroke));
+            }
+            if (withFont && font != b.font) {
+                b.font = font;
+                b.op(FONT, font == b.initialFont ? -1 : b.ref(font));
+            }
+        }
+    }
+}
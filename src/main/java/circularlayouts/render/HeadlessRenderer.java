@@ -0,0 +1,189 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.render;
+
+import circularlayouts.IDrawable;
+import circularlayouts.layout.DenseMatrix;
+import circularlayouts.layout.LayoutParameters;
+import circularlayouts.layout.Matrix;
+import circularlayouts.layout.RatioLayoutBuilder;
+import circularlayouts.swing.ChartSettings;
+import circularlayouts.tracks.Track;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+/**
+ * Lays out and paints a chart into an image without any Swing component, e.g.
+ * for batch exports with {@code java.awt.headless=true}. The chart looks like
+ * the one painted by the panel at the same size and without rotation.
+ *
+ * A layout may also be recorded once as a {@link DisplayList} and then be
+ * painted into images of any size or written as SVG.
+ *
+ * Every call creates its own layout and image, so one renderer may be used
+ * concurrently from several threads. The chart settings are copied when the
+ * renderer is created.
+ *
+ * @author Nils Hoffmann
+ */
+public class HeadlessRenderer {
+
+    private final ChartSettings chartSettings;
+    private final TileRenderer tileRenderer;
+
+    public HeadlessRenderer() {
+        this(new ChartSettings(), null);
+    }
+
+    /**
+     * @param chartSettings the rendering hints to apply
+     * @param tileRenderer the renderer to rasterize the tracks with, e.g. in
+     * parallel, or null to draw them directly
+     */
+    public HeadlessRenderer(ChartSettings chartSettings, TileRenderer tileRenderer) {
+        this.chartSettings = new ChartSettings(chartSettings);
+        this.tileRenderer = tileRenderer;
+    }
+
+    public ChartSettings getChartSettings() {
+        return new ChartSettings(chartSettings);
+    }
+
+    public TileRenderer getTileRenderer() {
+        return tileRenderer;
+    }
+
+    public BufferedImage render(double[][] data, LayoutParameters parameters, int width, int height) {
+        return render(new DenseMatrix(data), parameters, width, height);
+    }
+
+    public BufferedImage render(Matrix matrix, LayoutParameters parameters, int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+        }
+        Map<String, Track<? extends IDrawable>> shapes = new LinkedHashMap<String, Track<? extends IDrawable>>();
+        new RatioLayoutBuilder(matrix).addTracks(new LayoutParameters(parameters), shapes);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            draw(g2, new ArrayList<IDrawable>(shapes.values()), width, height);
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Lays out the matrix and records the tracks in layout space, so that
+     * they can be painted in any size and to several targets without laying
+     * them out or drawing them again.
+     *
+     * @param matrix the matrix
+     * @param parameters the layout parameters
+     * @return the recorded tracks
+     */
+    public DisplayList record(Matrix matrix, LayoutParameters parameters) {
+        Map<String, Track<? extends IDrawable>> shapes = new LinkedHashMap<String, Track<? extends IDrawable>>();
+        new RatioLayoutBuilder(matrix).addTracks(new LayoutParameters(parameters), shapes);
+        return DisplayList.record(new ArrayList<IDrawable>(shapes.values()));
+    }
+
+    public BufferedImage render(DisplayList displayList, int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        try {
+            setup(g2, width, height);
+            g2.transform(RatioLayoutBuilder.createViewportTransform(0, 0, width, height));
+            displayList.replay(g2);
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Writes recorded tracks as SVG.
+     *
+     * @param displayList the recorded tracks
+     * @param width the width of the document
+     * @param height the height of the document
+     * @param out the writer, which is not closed
+     * @param precision the number of fraction digits of the compact form, or
+     * a negative number for full precision
+     * @throws IOException if writing fails
+     */
+    public void writeSvg(DisplayList displayList, int width, int height, Writer out, int precision) throws IOException {
+        SvgGraphics2D g2 = new SvgGraphics2D(out, width, height, precision);
+        setup(g2, width, height);
+        g2.transform(RatioLayoutBuilder.createViewportTransform(0, 0, width, height));
+        displayList.replay(g2);
+        g2.finish();
+    }
+
+    public void writePng(double[][] data, LayoutParameters parameters, int width, int height, OutputStream out) throws IOException {
+        if (!ImageIO.write(render(data, parameters, width, height), "png", out)) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    public void writePng(double[][] data, LayoutParameters parameters, int width, int height, File f) throws IOException {
+        if (!ImageIO.write(render(data, parameters, width, height), "png", f)) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    /**
+     * Prepares the graphics like the panel does: white background, the chart
+     * settings, a round stroke and three quarters opacity.
+     */
+    private void setup(Graphics2D g2, int width, int height) {
+        chartSettings.applySettings(g2);
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, width, height);
+        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.75f));
+        g2.setStroke(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+    }
+
+    private void draw(Graphics2D g2, List<IDrawable> tracks, int width, int height) {
+        setup(g2, width, height);
+        AffineTransform viewport = RatioLayoutBuilder.createViewportTransform(0, 0, width, height);
+        if (tileRenderer != null) {
+            tileRenderer.render(tracks, viewport, g2, new Rectangle(0, 0, width, height));
+        } else {
+            g2.transform(viewport);
+            for (IDrawable d : tracks) {
+                d.draw(g2);
+            }
+        }
+    }
+}
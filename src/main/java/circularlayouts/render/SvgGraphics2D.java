@@ -0,0 +1,810 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.render;
+
+import circularlayouts.tracks.AnnularSector;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+/**
+ * A graphics that writes SVG to a stream while it is painted on. Every shape
+ * is written as soon as it is complete, so the memory needed does not depend
+ * on the number of shapes. Fills and strokes refer to CSS classes that are
+ * shared by all shapes with the same style, and a shape that is filled and
+ * then drawn with the same transform is written as a single element.
+ *
+ * Coordinates are written in device space, the document space of the SVG,
+ * either absolute in full float precision or, in the compact form, relative
+ * to the previous point and rounded to a fixed number of fraction digits.
+ * Annular sectors are written with arc commands. Only colors are supported as paints, a gradient is written with its first
+ * color and any other paint in black. XOR mode and copyArea are not
+ * supported.
+ *
+ * The document is complete after {@link #finish()}, which also reports the
+ * first error of the underlying writer.
+ *
+ * @author Nils Hoffmann
+ */
+public class SvgGraphics2D extends VectorGraphics2D {
+
+    private final Output output;
+    //the id of the clip path written for the clip, 0 if not written yet
+    private int clipId;
+
+    /**
+     * The default number of fraction digits of the compact form, a hundredth
+     * of a pixel.
+     */
+    public static final int DEFAULT_PRECISION = 2;
+
+    /**
+     * Writes the start of a document with absolute coordinates in full
+     * precision.
+     *
+     * @param out the writer, which is neither buffered nor closed here
+     * @param width the width of the document
+     * @param height the height of the document
+     */
+    public SvgGraphics2D(Writer out, int width, int height) {
+        this(out, width, height, -1);
+    }
+
+    /**
+     * Writes the start of a document.
+     *
+     * @param out the writer, which is neither buffered nor closed here
+     * @param width the width of the document
+     * @param height the height of the document
+     * @param precision the number of fraction digits of the compact form with
+     * relative coordinates, or a negative number for absolute coordinates in
+     * full precision
+     */
+    public SvgGraphics2D(Writer out, int width, int height, int precision) {
+        this.output = new Output(out, precision);
+        output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" version=\"1.1\""
+                + " width=\"" + width + "\" height=\"" + height + "\" viewBox=\"0 0 " + width + " " + height + "\">\n");
+    }
+
+    private SvgGraphics2D(SvgGraphics2D g) {
+        super(g);
+        this.output = g.output;
+        this.clipId = g.clipId;
+    }
+
+    /**
+     * Writes the end of the document and flushes the writer.
+     *
+     * @throws IOException the first error that occurred while writing
+     */
+    public void finish() throws IOException {
+        output.flushPending();
+        output.write("</svg>\n");
+        output.flush();
+        if (output.error != null) {
+            throw output.error;
+        }
+    }
+
+    @Override
+    public Graphics create() {
+        return new SvgGraphics2D(this);
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    @Override
+    protected Graphics2D getScratch() {
+        return output.getScratch();
+    }
+
+    @Override
+    protected void clipChanged() {
+        clipId = 0;
+    }
+
+    @Override
+    public void fill(Shape s) {
+        String style = fillStyle();
+        if (style == null) {
+            return;
+        }
+        String clipAttribute = clipAttribute();
+        output.flushPending();
+        //kept back until it is clear whether the shape is also drawn
+        output.pendingShape = s;
+        output.pendingTransform = new AffineTransform(transform);
+        output.pendingStyle = style;
+        output.pendingClip = clipAttribute;
+    }
+
+    @Override
+    public void draw(Shape s) {
+        if (!(stroke instanceof BasicStroke) || !isUniform(transform)) {
+            //the stroke cannot be expressed in device space
+            fill(stroke.createStrokedShape(s));
+            return;
+        }
+        String style = strokeStyle((BasicStroke) stroke);
+        if (style == null) {
+            return;
+        }
+        String clipAttribute = clipAttribute();
+        if (output.pendingShape == s && output.pendingTransform.equals(transform) && output.pendingClip.equals(clipAttribute)) {
+            String fillStyle = output.pendingStyle;
+            output.pendingShape = null;
+            output.writePath(s, transform, fillStyle, style, clipAttribute);
+        } else {
+            output.flushPending();
+            output.writePath(s, transform, null, style, clipAttribute);
+        }
+    }
+
+    /**
+     * Fills a recorded path of a display list. The path is read directly from
+     * the arrays of the list, no shape is built for it.
+     */
+    void fill(DisplayList list, int path) {
+        String style = fillStyle();
+        if (style == null) {
+            return;
+        }
+        String clipAttribute = clipAttribute();
+        output.flushPending();
+        output.pendingList = list;
+        output.pendingPath = path;
+        output.pendingTransform = new AffineTransform(transform);
+        output.pendingStyle = style;
+        output.pendingClip = clipAttribute;
+    }
+
+    /**
+     * Draws a recorded path of a display list like
+     * {@link #fill(circularlayouts.render.DisplayList, int)} fills it.
+     */
+    void draw(DisplayList list, int path) {
+        if (!(stroke instanceof BasicStroke) || !isUniform(transform)) {
+            draw(list.getPath(path));
+            return;
+        }
+        String style = strokeStyle((BasicStroke) stroke);
+        if (style == null) {
+            return;
+        }
+        String clipAttribute = clipAttribute();
+        if (output.pendingList == list && output.pendingPath == path && output.pendingTransform.equals(transform) && output.pendingClip.equals(clipAttribute)) {
+            String fillStyle = output.pendingStyle;
+            output.pendingList = null;
+            output.writePath(list, path, transform, fillStyle, style, clipAttribute);
+        } else {
+            output.flushPending();
+            output.writePath(list, path, transform, null, style, clipAttribute);
+        }
+    }
+
+    @Override
+    public void drawString(String str, float x, float y) {
+        if (str.isEmpty()) {
+            return;
+        }
+        String style = fillStyle();
+        if (style == null) {
+            return;
+        }
+        String clipAttribute = clipAttribute();
+        output.flushPending();
+        StringBuilder sb = new StringBuilder(style);
+        sb.append(";font-family:'").append(font.getFamily()).append('\'');
+        sb.append(";font-size:");
+        appendNumber(sb, font.getSize2D());
+        if (font.isBold()) {
+            sb.append(";font-weight:bold");
+        }
+        if (font.isItalic()) {
+            sb.append(";font-style:italic");
+        }
+        StringBuilder e = new StringBuilder();
+        e.append("<text class=\"").append(output.classFor(sb.toString())).append("\" x=\"");
+        appendNumber(e, x);
+        e.append("\" y=\"");
+        appendNumber(e, y);
+        e.append('"');
+        appendTransform(e, transform);
+        e.append(clipAttribute).append('>');
+        appendEscaped(e, str);
+        e.append("</text>\n");
+        output.write(e.toString());
+    }
+
+    @Override
+    public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+        BufferedImage image = toBufferedImage(img, obs);
+        if (image == null) {
+            return false;
+        }
+        String clipAttribute = clipAttribute();
+        output.flushPending();
+        AffineTransform at = new AffineTransform(transform);
+        if (xform != null) {
+            at.concatenate(xform);
+        }
+        StringBuilder e = new StringBuilder();
+        e.append("<image width=\"").append(image.getWidth()).append("\" height=\"").append(image.getHeight()).append('"');
+        appendTransform(e, at);
+        e.append(clipAttribute).append(" xlink:href=\"data:image/png;base64,");
+        output.write(e.toString());
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", png);
+        } catch (IOException ex) {
+            output.fail(ex);
+            return false;
+        }
+        output.write(base64(png.toByteArray()));
+        output.write("\"/>\n");
+        return true;
+    }
+
+    /**
+     * @return the style of a fill with the current paint, or null if the fill
+     * is invisible
+     */
+    private String fillStyle() {
+        double opacity = getOpacity();
+        if (opacity <= 0.0d) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder("fill:");
+        appendColor(sb, getPaintColor());
+        if (opacity < 1.0d) {
+            sb.append(";fill-opacity:");
+            appendNumber(sb, opacity);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the style of a stroke in device space with the current paint,
+     * or null if the stroke is invisible
+     */
+    private String strokeStyle(BasicStroke bs) {
+        double opacity = getOpacity();
+        if (opacity <= 0.0d) {
+            return null;
+        }
+        double scale = Math.sqrt(Math.abs(transform.getDeterminant()));
+        StringBuilder sb = new StringBuilder("stroke:");
+        appendColor(sb, getPaintColor());
+        if (opacity < 1.0d) {
+            sb.append(";stroke-opacity:");
+            appendNumber(sb, opacity);
+        }
+        sb.append(";stroke-width:");
+        //a zero width is the thinnest line of the device
+        appendNumber(sb, bs.getLineWidth() == 0.0f ? 1.0d : bs.getLineWidth() * scale);
+        switch (bs.getEndCap()) {
+            case BasicStroke.CAP_ROUND:
+                sb.append(";stroke-linecap:round");
+                break;
+            case BasicStroke.CAP_SQUARE:
+                sb.append(";stroke-linecap:square");
+                break;
+            default:
+        }
+        switch (bs.getLineJoin()) {
+            case BasicStroke.JOIN_ROUND:
+                sb.append(";stroke-linejoin:round");
+                break;
+            case BasicStroke.JOIN_BEVEL:
+                sb.append(";stroke-linejoin:bevel");
+                break;
+            default:
+                if (bs.getMiterLimit() != 4.0f) {
+                    sb.append(";stroke-miterlimit:");
+                    appendNumber(sb, bs.getMiterLimit());
+                }
+        }
+        float[] dash = bs.getDashArray();
+        if (dash != null && dash.length > 0) {
+            sb.append(";stroke-dasharray:");
+            for (int i = 0; i < dash.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendNumber(sb, dash[i] * scale);
+            }
+            if (bs.getDashPhase() != 0.0f) {
+                sb.append(";stroke-dashoffset:");
+                appendNumber(sb, bs.getDashPhase() * scale);
+            }
+        }
+        return sb.toString();
+    }
+
+    private Color getPaintColor() {
+        if (paint instanceof Color) {
+            return (Color) paint;
+        }
+        if (paint instanceof GradientPaint) {
+            return ((GradientPaint) paint).getColor1();
+        }
+        return Color.BLACK;
+    }
+
+    private double getOpacity() {
+        double opacity = getPaintColor().getAlpha() / 255.0d;
+        if (composite instanceof AlphaComposite) {
+            opacity *= ((AlphaComposite) composite).getAlpha();
+        }
+        return opacity;
+    }
+
+    private String clipAttribute() {
+        if (clip == null) {
+            return "";
+        }
+        if (clipId == 0) {
+            clipId = output.writeClip(clip);
+        }
+        return " clip-path=\"url(#clip" + clipId + ")\"";
+    }
+
+    private static void appendColor(StringBuilder sb, Color c) {
+        sb.append('#');
+        String hex = Integer.toHexString(c.getRGB() & 0xFFFFFF);
+        for (int i = hex.length(); i < 6; i++) {
+            sb.append('0');
+        }
+        sb.append(hex);
+    }
+
+    static void appendNumber(StringBuilder sb, double v) {
+        float f = (float) v;
+        if (f == (int) f) {
+            sb.append((int) f);
+        } else {
+            sb.append(f);
+        }
+    }
+
+    private static void appendTransform(StringBuilder sb, AffineTransform at) {
+        if (at.isIdentity()) {
+            return;
+        }
+        sb.append(" transform=\"matrix(");
+        appendNumber(sb, at.getScaleX());
+        sb.append(' ');
+        appendNumber(sb, at.getShearY());
+        sb.append(' ');
+        appendNumber(sb, at.getShearX());
+        sb.append(' ');
+        appendNumber(sb, at.getScaleY());
+        sb.append(' ');
+        appendNumber(sb, at.getTranslateX());
+        sb.append(' ');
+        appendNumber(sb, at.getTranslateY());
+        sb.append(")\"");
+    }
+
+    private static void appendEscaped(StringBuilder sb, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static String base64(byte[] data) {
+        StringBuilder sb = new StringBuilder((data.length + 2) / 3 * 4);
+        for (int i = 0; i < data.length; i += 3) {
+            int b = (data[i] & 0xFF) << 16;
+            if (i + 1 < data.length) {
+                b |= (data[i + 1] & 0xFF) << 8;
+            }
+            if (i + 2 < data.length) {
+                b |= data[i + 2] & 0xFF;
+            }
+            sb.append(BASE64[(b >> 18) & 0x3F]).append(BASE64[(b >> 12) & 0x3F]);
+            sb.append(i + 1 < data.length ? BASE64[(b >> 6) & 0x3F] : '=');
+            sb.append(i + 2 < data.length ? BASE64[b & 0x3F] : '=');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The state shared by a graphics and all graphics created from it: the
+     * writer, the CSS classes written so far and the fill that waits for a
+     * matching stroke.
+     */
+    private static class Output {
+
+        private final Writer out;
+        private final Map<String, String> classes = new HashMap<String, String>();
+        private final StringBuilder sb = new StringBuilder();
+        private IOException error;
+        private int clipCount;
+        private Graphics2D scratch;
+        private Shape pendingShape;
+        //or a recorded path of a display list
+        private DisplayList pendingList;
+        private int pendingPath;
+        private AffineTransform pendingTransform;
+        private String pendingStyle;
+        private String pendingClip;
+
+        //the path state of the compact form, coordinates in units of the precision
+        private final int precision;
+        private final double unit;
+        private long x, y, startx, starty;
+        private char lastCommand;
+        //the transformed coordinates of a recorded path
+        private double[] points = new double[64];
+
+        Output(Writer out, int precision) {
+            this.out = out;
+            this.precision = Math.min(precision, 9);
+            this.unit = Math.pow(10, this.precision);
+        }
+
+        void write(String s) {
+            if (error != null) {
+                return;
+            }
+            try {
+                out.write(s);
+            } catch (IOException ex) {
+                error = ex;
+            }
+        }
+
+        void flush() {
+            if (error != null) {
+                return;
+            }
+            try {
+                out.flush();
+            } catch (IOException ex) {
+                error = ex;
+            }
+        }
+
+        void fail(IOException ex) {
+            if (error == null) {
+                error = ex;
+            }
+        }
+
+        /**
+         * Graphics used for font metrics and the device configuration.
+         */
+        Graphics2D getScratch() {
+            if (scratch == null) {
+                scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+            }
+            return scratch;
+        }
+
+        /**
+         * @return the class of the style, the class is written before its
+         * first use
+         */
+        String classFor(String style) {
+            String name = classes.get(style);
+            if (name == null) {
+                name = "c" + classes.size();
+                classes.put(style, name);
+                write("<style type=\"text/css\"><![CDATA[." + name + "{" + style + "}]]></style>\n");
+            }
+            return name;
+        }
+
+        int writeClip(Shape clip) {
+            int id = ++clipCount;
+            sb.setLength(0);
+            sb.append("<clipPath id=\"clip").append(id).append("\"><path d=\"");
+            appendPathData(clip, null);
+            sb.append("\"/></clipPath>\n");
+            write(sb.toString());
+            return id;
+        }
+
+        void flushPending() {
+            if (pendingShape != null) {
+                Shape s = pendingShape;
+                pendingShape = null;
+                writePath(s, pendingTransform, pendingStyle, null, pendingClip);
+            } else if (pendingList != null) {
+                DisplayList list = pendingList;
+                pendingList = null;
+                writePath(list, pendingPath, pendingTransform, pendingStyle, null, pendingClip);
+            }
+        }
+
+        void writePath(Shape s, AffineTransform at, String fillStyle, String strokeStyle, String clipAttribute) {
+            PathIterator pi = s.getPathIterator(at);
+            beginElement(pi.getWindingRule(), fillStyle, strokeStyle);
+            //end points of larger arcs may be rounded onto each other
+            if (s instanceof AnnularSector && isUniform(at) && Math.abs(((AnnularSector) s).getEndAngle() - ((AnnularSector) s).getStartAngle()) <= 0.5d) {
+                appendSectorData((AnnularSector) s, at);
+            } else {
+                appendPathData(pi);
+            }
+            sb.append('"').append(clipAttribute).append("/>\n");
+            write(sb.toString());
+        }
+
+        void writePath(DisplayList list, int path, AffineTransform at, String fillStyle, String strokeStyle, String clipAttribute) {
+            beginElement(list.getWindingRule(path), fillStyle, strokeStyle);
+            appendPathData(list, path, at);
+            sb.append('"').append(clipAttribute).append("/>\n");
+            write(sb.toString());
+        }
+
+        /**
+         * Starts a path element with the class of its style in the buffer.
+         */
+        private void beginElement(int windingRule, String fillStyle, String strokeStyle) {
+            String style;
+            if (fillStyle == null) {
+                style = "fill:none;" + strokeStyle;
+            } else {
+                style = windingRule == PathIterator.WIND_EVEN_ODD ? fillStyle + ";fill-rule:evenodd" : fillStyle;
+                if (strokeStyle != null) {
+                    style = style + ";" + strokeStyle;
+                }
+            }
+            String name = classFor(style);
+            sb.setLength(0);
+            sb.append("<path class=\"").append(name).append("\" d=\"");
+        }
+
+        private void appendPathData(Shape s, AffineTransform at) {
+            appendPathData(s.getPathIterator(at));
+        }
+
+        private void appendPathData(PathIterator pi) {
+            beginPath();
+            double[] c = new double[6];
+            while (!pi.isDone()) {
+                appendPathSegment(pi.currentSegment(c), c, 0);
+                pi.next();
+            }
+        }
+
+        /**
+         * Writes a recorded path. All of its points are transformed at once
+         * and the segments are read from the segment types of the list.
+         */
+        private void appendPathData(DisplayList list, int path, AffineTransform at) {
+            int from = list.getCoordOffset(path);
+            int to = list.getCoordOffset(path + 1);
+            if (points.length < to - from) {
+                points = new double[Math.max(to - from, 2 * points.length)];
+            }
+            list.transformCoords(from, to, at, points);
+            beginPath();
+            int offset = 0;
+            for (int i = list.getSegmentOffset(path), end = list.getSegmentOffset(path + 1); i < end; i++) {
+                offset = appendPathSegment(list.getSegmentType(i), points, offset);
+            }
+        }
+
+        /**
+         * Appends a segment of the given path iterator type.
+         *
+         * @return the offset of the points of the next segment
+         */
+        private int appendPathSegment(int type, double[] c, int offset) {
+            switch (type) {
+                case PathIterator.SEG_MOVETO:
+                    appendSegment('m', c, offset, 1);
+                    return offset + 2;
+                case PathIterator.SEG_LINETO:
+                    appendSegment('l', c, offset, 1);
+                    return offset + 2;
+                case PathIterator.SEG_QUADTO:
+                    appendSegment('q', c, offset, 2);
+                    return offset + 4;
+                case PathIterator.SEG_CUBICTO:
+                    appendSegment('c', c, offset, 3);
+                    return offset + 6;
+                default:
+                    appendClose();
+                    return offset;
+            }
+        }
+
+        /**
+         * Writes the outline of the sector with two arcs. The transform must
+         * keep circles circular.
+         */
+        private void appendSectorData(AnnularSector sector, AffineTransform at) {
+            double start = 2 * Math.PI * sector.getStartAngle();
+            double end = 2 * Math.PI * sector.getEndAngle();
+            double scale = Math.sqrt(Math.abs(at.getDeterminant()));
+            //angles run counter-clockwise on screen, a reflection turns them
+            boolean sweep = (end < start) == (at.getDeterminant() > 0);
+            boolean large = Math.abs(end - start) > Math.PI;
+            double[] c = new double[8];
+            double cx = sector.getCenterx();
+            double cy = sector.getCentery();
+            double ro = sector.getOuterRadius();
+            double ri = sector.getInnerRadius();
+            c[0] = cx + ro * Math.cos(start);
+            c[1] = cy - ro * Math.sin(start);
+            c[2] = cx + ro * Math.cos(end);
+            c[3] = cy - ro * Math.sin(end);
+            c[4] = cx + ri * Math.cos(end);
+            c[5] = cy - ri * Math.sin(end);
+            c[6] = cx + ri * Math.cos(start);
+            c[7] = cy - ri * Math.sin(start);
+            at.transform(c, 0, c, 0, 4);
+            beginPath();
+            appendSegment('m', c, 0, 1);
+            appendArc(ro * scale, large, sweep, c[2], c[3]);
+            c[0] = c[4];
+            c[1] = c[5];
+            appendSegment('l', c, 0, 1);
+            appendArc(ri * scale, large, !sweep, c[6], c[7]);
+            appendClose();
+        }
+
+        private void beginPath() {
+            x = 0;
+            y = 0;
+            startx = 0;
+            starty = 0;
+            lastCommand = 0;
+        }
+
+        /**
+         * Appends a path command with n points, starting at the offset. In
+         * the compact form the points are rounded and relative to the current
+         * point, and repeated commands are left out.
+         */
+        private void appendSegment(char command, double[] c, int offset, int n) {
+            if (precision < 0) {
+                sb.append(Character.toUpperCase(command));
+                for (int i = 0; i < 2 * n; i++) {
+                    if (i > 0) {
+                        sb.append(' ');
+                    }
+                    appendNumber(sb, c[offset + i]);
+                }
+                return;
+            }
+            boolean implicit = command == lastCommand;
+            if (!implicit) {
+                sb.append(command);
+            }
+            for (int i = 0; i < n; i++) {
+                appendValue(Math.round(c[offset + 2 * i] * unit) - x, !implicit && i == 0);
+                appendValue(Math.round(c[offset + 2 * i + 1] * unit) - y, false);
+            }
+            x = Math.round(c[offset + 2 * n - 2] * unit);
+            y = Math.round(c[offset + 2 * n - 1] * unit);
+            if (command == 'm') {
+                startx = x;
+                starty = y;
+                //further points of a move are lines
+                lastCommand = 'l';
+            } else {
+                lastCommand = command;
+            }
+        }
+
+        private void appendArc(double radius, boolean large, boolean sweep, double ex, double ey) {
+            if (precision < 0) {
+                sb.append('A');
+                appendNumber(sb, radius);
+                sb.append(' ');
+                appendNumber(sb, radius);
+                sb.append(" 0 ").append(large ? '1' : '0').append(' ').append(sweep ? '1' : '0').append(' ');
+                appendNumber(sb, ex);
+                sb.append(' ');
+                appendNumber(sb, ey);
+                return;
+            }
+            boolean implicit = lastCommand == 'a';
+            if (!implicit) {
+                sb.append('a');
+            }
+            long r = Math.round(radius * unit);
+            appendValue(r, !implicit);
+            appendValue(r, false);
+            sb.append(" 0 ").append(large ? '1' : '0').append(' ').append(sweep ? '1' : '0');
+            long px = Math.round(ex * unit);
+            long py = Math.round(ey * unit);
+            appendValue(px - x, false);
+            appendValue(py - y, false);
+            x = px;
+            y = py;
+            lastCommand = 'a';
+        }
+
+        private void appendClose() {
+            sb.append(precision < 0 ? 'Z' : 'z');
+            x = startx;
+            y = starty;
+            lastCommand = 'z';
+        }
+
+        /**
+         * Appends a value given in units of the precision, without trailing
+         * zeros and without a separator before a minus sign.
+         */
+        private void appendValue(long v, boolean afterCommand) {
+            if (v < 0) {
+                sb.append('-');
+                v = -v;
+            } else if (!afterCommand) {
+                sb.append(' ');
+            }
+            long u = (long) unit;
+            long integer = v / u;
+            long fraction = v % u;
+            if (integer != 0 || fraction == 0) {
+                sb.append(integer);
+            }
+            if (fraction != 0) {
+                sb.append('.');
+                String digits = Long.toString(fraction);
+                for (int i = digits.length(); i < precision; i++) {
+                    sb.append('0');
+                }
+                int end = digits.length();
+                while (digits.charAt(end - 1) == '0') {
+                    end--;
+                }
+                sb.append(digits, 0, end);
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.render;
+
+import circularlayouts.IDrawable;
+import circularlayouts.tracks.Track;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Rasterizes drawables in tiles. The drawables, and the children of tracks,
+ * are binned into the tiles they can reach by their bounds. Each tile is
+ * painted into its own image, in parallel on a fork/join pool if one is set,
+ * and the tiles are finally drawn into the target on the calling thread.
+ *
+ * Drawables are drawn concurrently from several threads and must not be
+ * modified while rendering. Drawing leaves the dirty state and the damage of
+ * the drawables alone, the caller clears them once after
+ * {@link #render(java.util.List, java.awt.geom.AffineTransform, java.awt.Graphics2D, java.awt.Rectangle)}
+ * returned.
+ *
+ * @author Nils Hoffmann
+ */
+public class TileRenderer {
+
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    private ForkJoinPool forkJoinPool;
+    private int tileSize = DEFAULT_TILE_SIZE;
+
+    public TileRenderer() {
+        this(null);
+    }
+
+    /**
+     * @param forkJoinPool the pool for parallel rendering, or null to render
+     * the tiles one after the other
+     */
+    public TileRenderer(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public void setTileSize(int tileSize) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be >= 1!");
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Renders the drawables into a new translucent image.
+     *
+     * @param drawables the drawables, in painting order
+     * @param transform the transform from drawable to image coordinates
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param hints the rendering hints, may be null
+     * @return the image
+     */
+    public BufferedImage render(List<? extends IDrawable> drawables, AffineTransform transform, int width, int height, Map<?, ?> hints) {
+        BufferedImage image = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2 = image.createGraphics();
+        if (hints != null) {
+            g2.setRenderingHints(hints);
+        }
+        render(drawables, transform, g2, new Rectangle(0, 0, width, height));
+        g2.dispose();
+        return image;
+    }
+
+    /**
+     * Renders the part of the drawables inside the region into the target.
+     * The tiles start with the paint, color, stroke, composite, font and
+     * rendering hints of the target. They are drawn into the target with
+     * SrcOver, in the current user space of the target.
+     *
+     * @param drawables the drawables, in painting order
+     * @param transform the transform from drawable to target coordinates
+     * @param target the target graphics
+     * @param region the region to render, in target coordinates
+     */
+    public void render(List<? extends IDrawable> drawables, AffineTransform transform, Graphics2D target, Rectangle region) {
+        if (region.isEmpty()) {
+            return;
+        }
+        final Tiles tiles = new Tiles(drawables, transform, target, region, tileSize);
+        if (forkJoinPool == null) {
+            tiles.render(0, tiles.getCount());
+        } else {
+            forkJoinPool.invoke(new TileTask(tiles, 0, tiles.getCount()));
+        }
+        Graphics2D g2 = (Graphics2D) target.create();
+        g2.setComposite(AlphaComposite.SrcOver);
+        for (int i = 0; i < tiles.getCount(); i++) {
+            if (tiles.images[i] != null) {
+                g2.drawImage(tiles.images[i], tiles.getX(i), tiles.getY(i), null);
+            }
+        }
+        g2.dispose();
+    }
+
+    /**
+     * The tile grid over a region, with the drawables binned per tile.
+     */
+    private static final class Tiles {
+
+        private final IDrawable[] items;
+        //the item is the background of a track
+        private final boolean[] backgrounds;
+        private final int[] tilePointers;
+        private final int[] tileItems;
+        private final BufferedImage[] images;
+        private final Rectangle region;
+        private final int tileSize, columns, rows;
+        private final AffineTransform transform;
+        //state of the target, read once on the calling thread
+        private final RenderingHints hints;
+        private final Paint paint;
+        private final Color color;
+        private final Stroke stroke;
+        private final Composite composite;
+        private final Font font;
+        private final Color background;
+
+        Tiles(List<? extends IDrawable> drawables, AffineTransform transform, Graphics2D template, Rectangle region, int tileSize) {
+            this.region = region;
+            this.tileSize = tileSize;
+            this.transform = transform;
+            this.hints = template.getRenderingHints();
+            this.paint = template.getPaint();
+            this.color = template.getColor();
+            this.stroke = template.getStroke();
+            this.composite = template.getComposite();
+            this.font = template.getFont();
+            this.background = template.getBackground() == null ? Color.WHITE : template.getBackground();
+            this.columns = (region.width + tileSize - 1) / tileSize;
+            this.rows = (region.height + tileSize - 1) / tileSize;
+            int count = 0;
+            for (IDrawable d : drawables) {
+                count += d instanceof Track ? 1 + ((Track<?>) d).getChildren().size() : 1;
+            }
+            items = new IDrawable[count];
+            backgrounds = new boolean[count];
+            int k = 0;
+            for (IDrawable d : drawables) {
+                if (d instanceof Track) {
+                    backgrounds[k] = true;
+                    items[k++] = d;
+                    for (IDrawable child : ((Track<?>) d).getChildren()) {
+                        items[k++] = child;
+                    }
+                } else {
+                    items[k++] = d;
+                }
+            }
+            //tile range of every item, -1 if it is outside of the region
+            double pad = 1.0d;
+            if (stroke instanceof BasicStroke) {
+                pad += ((BasicStroke) stroke).getLineWidth() * Math.sqrt(Math.abs(transform.getDeterminant())) / 2.0d;
+            }
+            int[] ranges = new int[4 * count];
+            int[] counts = new int[columns * rows + 1];
+            double[] corners = new double[8];
+            for (int i = 0; i < count; i++) {
+                Rectangle2D b = items[i].getBounds2D();
+                corners[0] = b.getMinX();
+                corners[1] = b.getMinY();
+                corners[2] = b.getMaxX();
+                corners[3] = b.getMinY();
+                corners[4] = b.getMaxX();
+                corners[5] = b.getMaxY();
+                corners[6] = b.getMinX();
+                corners[7] = b.getMaxY();
+                transform.transform(corners, 0, corners, 0, 4);
+                double minx = Math.min(Math.min(corners[0], corners[2]), Math.min(corners[4], corners[6])) - pad - region.x;
+                double maxx = Math.max(Math.max(corners[0], corners[2]), Math.max(corners[4], corners[6])) + pad - region.x;
+                double miny = Math.min(Math.min(corners[1], corners[3]), Math.min(corners[5], corners[7])) - pad - region.y;
+                double maxy = Math.max(Math.max(corners[1], corners[3]), Math.max(corners[5], corners[7])) + pad - region.y;
+                if (maxx < 0 || maxy < 0 || minx >= region.width || miny >= region.height) {
+                    ranges[4 * i] = -1;
+                    continue;
+                }
+                int tx0 = Math.max(0, (int) (minx / tileSize));
+                int tx1 = Math.min(columns - 1, (int) (maxx / tileSize));
+                int ty0 = Math.max(0, (int) (miny / tileSize));
+                int ty1 = Math.min(rows - 1, (int) (maxy / tileSize));
+                ranges[4 * i] = tx0;
+                ranges[4 * i + 1] = tx1;
+                ranges[4 * i + 2] = ty0;
+                ranges[4 * i + 3] = ty1;
+                for (int ty = ty0; ty <= ty1; ty++) {
+                    for (int tx = tx0; tx <= tx1; tx++) {
+                        counts[ty * columns + tx + 1]++;
+                    }
+                }
+            }
+            //counting sort into compressed rows, keeping the painting order
+            tilePointers = counts;
+            for (int t = 0; t < columns * rows; t++) {
+                tilePointers[t + 1] += tilePointers[t];
+            }
+            tileItems = new int[tilePointers[columns * rows]];
+            int[] next = new int[columns * rows];
+            System.arraycopy(tilePointers, 0, next, 0, next.length);
+            for (int i = 0; i < count; i++) {
+                if (ranges[4 * i] < 0) {
+                    continue;
+                }
+                for (int ty = ranges[4 * i + 2]; ty <= ranges[4 * i + 3]; ty++) {
+                    for (int tx = ranges[4 * i]; tx <= ranges[4 * i + 1]; tx++) {
+                        tileItems[next[ty * columns + tx]++] = i;
+                    }
+                }
+            }
+            images = new BufferedImage[columns * rows];
+        }
+
+        int getCount() {
+            return columns * rows;
+        }
+
+        int getX(int tile) {
+            return region.x + (tile % columns) * tileSize;
+        }
+
+        int getY(int tile) {
+            return region.y + (tile / columns) * tileSize;
+        }
+
+        void render(int from, int to) {
+            for (int tile = from; tile < to; tile++) {
+                if (tilePointers[tile] == tilePointers[tile + 1]) {
+                    continue;
+                }
+                int x = getX(tile);
+                int y = getY(tile);
+                int width = Math.min(tileSize, region.x + region.width - x);
+                int height = Math.min(tileSize, region.y + region.height - y);
+                BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+                Graphics2D g2 = image.createGraphics();
+                g2.setRenderingHints(hints);
+                g2.setPaint(paint);
+                g2.setColor(color);
+                g2.setStroke(stroke);
+                g2.setComposite(composite);
+                g2.setFont(font);
+                g2.setBackground(background);
+                g2.translate(-x, -y);
+                g2.transform(transform);
+                for (int k = tilePointers[tile]; k < tilePointers[tile + 1]; k++) {
+                    int i = tileItems[k];
+                    if (backgrounds[i]) {
+                        ((Track<?>) items[i]).drawBackground(g2);
+                    } else {
+                        items[i].draw(g2);
+                    }
+                }
+                g2.dispose();
+                images[tile] = image;
+            }
+        }
+    }
+
+    /**
+     * Splits a range of tiles in halves until single tiles are left.
+     */
+    private static final class TileTask extends RecursiveAction {
+
+        private final Tiles tiles;
+        private final int from, to;
+
+        TileTask(Tiles tiles, int from, int to) {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                tiles.render(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TileTask(tiles, from, mid), new TileTask(tiles, mid, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,561 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.render;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.text.CharacterIterator;
+import java.util.Map;
+
+/**
+ * Base of graphics that do not rasterize but pass shapes on, e.g. to write
+ * them to a file. It keeps the graphics state, with the clip in device space,
+ * and reduces all primitives to the few operations that subclasses
+ * implement: filling and drawing shapes, drawing strings and drawing images
+ * with a transform.
+ *
+ * @author Nils Hoffmann
+ */
+public abstract class VectorGraphics2D extends Graphics2D {
+
+    protected AffineTransform transform = new AffineTransform();
+    protected Paint paint = Color.BLACK;
+    protected Color color = Color.BLACK;
+    protected Color background = Color.WHITE;
+    protected Stroke stroke = new BasicStroke();
+    protected Composite composite = AlphaComposite.SrcOver;
+    protected Font font = new Font(Font.DIALOG, Font.PLAIN, 12);
+    protected RenderingHints hints = new RenderingHints(null);
+    //in device space, null if there is no clip
+    protected Area clip;
+
+    protected VectorGraphics2D() {
+    }
+
+    /**
+     * Copies the state of the given graphics, for {@link #create()}.
+     */
+    protected VectorGraphics2D(VectorGraphics2D g) {
+        this.transform = new AffineTransform(g.transform);
+        this.paint = g.paint;
+        this.color = g.color;
+        this.background = g.background;
+        this.stroke = g.stroke;
+        this.composite = g.composite;
+        this.font = g.font;
+        this.hints = (RenderingHints) g.hints.clone();
+        //clip areas are replaced, never modified, and may be shared
+        this.clip = g.clip;
+    }
+
+    @Override
+    public abstract void fill(Shape s);
+
+    @Override
+    public abstract void draw(Shape s);
+
+    @Override
+    public abstract void drawString(String str, float x, float y);
+
+    @Override
+    public abstract boolean drawImage(Image img, AffineTransform xform, ImageObserver obs);
+
+    /**
+     * @return a raster graphics for font metrics and the device
+     * configuration
+     */
+    protected abstract Graphics2D getScratch();
+
+    /**
+     * Called when the clip changed.
+     */
+    protected void clipChanged() {
+    }
+
+    @Override
+    public void drawString(String str, int x, int y) {
+        drawString(str, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+        //attributes are not supported, the text is written in the current font
+        StringBuilder sb = new StringBuilder();
+        for (char c = iterator.first(); c != CharacterIterator.DONE; c = iterator.next()) {
+            sb.append(c);
+        }
+        drawString(sb.toString(), x, y);
+    }
+
+    @Override
+    public void drawGlyphVector(GlyphVector g, float x, float y) {
+        fill(g.getOutline(x, y));
+    }
+
+    @Override
+    public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+        drawImage(op == null ? img : op.filter(img, null), x, y, null);
+    }
+
+    @Override
+    public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+        BufferedImage image;
+        if (img instanceof BufferedImage) {
+            image = (BufferedImage) img;
+        } else {
+            image = new BufferedImage(img.getColorModel(), img.copyData(null), img.getColorModel().isAlphaPremultiplied(), null);
+        }
+        drawImage(image, xform, null);
+    }
+
+    @Override
+    public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+        drawRenderedImage(img.createDefaultRendering(), xform);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+        return drawImage(img, AffineTransform.getTranslateInstance(x, y), observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+        int w = img.getWidth(observer);
+        int h = img.getHeight(observer);
+        if (w <= 0 || h <= 0) {
+            return false;
+        }
+        AffineTransform at = AffineTransform.getTranslateInstance(x, y);
+        at.scale(width / (double) w, height / (double) h);
+        return drawImage(img, at, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+        int w = img.getWidth(observer);
+        int h = img.getHeight(observer);
+        if (w <= 0 || h <= 0) {
+            return false;
+        }
+        return drawImage(img, x, y, w, h, bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+        fillBackground(new Rectangle(x, y, width, height), bgcolor);
+        return drawImage(img, x, y, width, height, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, ImageObserver observer) {
+        BufferedImage image = toBufferedImage(img, observer);
+        if (image == null) {
+            return false;
+        }
+        int sx = Math.max(0, Math.min(sx1, sx2));
+        int sy = Math.max(0, Math.min(sy1, sy2));
+        int sw = Math.min(image.getWidth(), Math.max(sx1, sx2)) - sx;
+        int sh = Math.min(image.getHeight(), Math.max(sy1, sy2)) - sy;
+        if (sw <= 0 || sh <= 0) {
+            return true;
+        }
+        AffineTransform at = AffineTransform.getTranslateInstance(dx1, dy1);
+        at.scale((dx2 - dx1) / (double) (sx2 - sx1), (dy2 - dy1) / (double) (sy2 - sy1));
+        //pixel (u, v) of the sub image is the source point (sx + u, sy + v)
+        at.translate(sx - sx1, sy - sy1);
+        return drawImage(image.getSubimage(sx, sy, sw, sh), at, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, Color bgcolor, ImageObserver observer) {
+        fillBackground(new Rectangle(Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1), Math.abs(dy2 - dy1)), bgcolor);
+        return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+    }
+
+    @Override
+    public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        if (onStroke) {
+            s = stroke.createStrokedShape(s);
+        }
+        return transform.createTransformedShape(s).intersects(rect);
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return getScratch().getDeviceConfiguration();
+    }
+
+    @Override
+    public void setComposite(Composite comp) {
+        if (comp != null) {
+            this.composite = comp;
+        }
+    }
+
+    @Override
+    public Composite getComposite() {
+        return composite;
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        if (paint == null) {
+            return;
+        }
+        this.paint = paint;
+        if (paint instanceof Color) {
+            this.color = (Color) paint;
+        }
+    }
+
+    @Override
+    public Paint getPaint() {
+        return paint;
+    }
+
+    @Override
+    public Color getColor() {
+        return color;
+    }
+
+    @Override
+    public void setColor(Color c) {
+        if (c != null) {
+            this.color = c;
+            this.paint = c;
+        }
+    }
+
+    @Override
+    public void setStroke(Stroke s) {
+        if (s != null) {
+            this.stroke = s;
+        }
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return stroke;
+    }
+
+    @Override
+    public void setBackground(Color color) {
+        this.background = color;
+    }
+
+    @Override
+    public Color getBackground() {
+        return background;
+    }
+
+    @Override
+    public Font getFont() {
+        return font;
+    }
+
+    @Override
+    public void setFont(Font font) {
+        if (font != null) {
+            this.font = font;
+        }
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font f) {
+        return getScratch().getFontMetrics(f);
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return new FontRenderContext(transform,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON.equals(hints.get(RenderingHints.KEY_TEXT_ANTIALIASING)),
+                RenderingHints.VALUE_FRACTIONALMETRICS_ON.equals(hints.get(RenderingHints.KEY_FRACTIONALMETRICS)));
+    }
+
+    @Override
+    public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+        hints.put(hintKey, hintValue);
+    }
+
+    @Override
+    public Object getRenderingHint(RenderingHints.Key hintKey) {
+        return hints.get(hintKey);
+    }
+
+    @Override
+    public void setRenderingHints(Map<?, ?> hints) {
+        this.hints.clear();
+        this.hints.putAll(hints);
+    }
+
+    @Override
+    public void addRenderingHints(Map<?, ?> hints) {
+        this.hints.putAll(hints);
+    }
+
+    @Override
+    public RenderingHints getRenderingHints() {
+        return (RenderingHints) hints.clone();
+    }
+
+    @Override
+    public void translate(int x, int y) {
+        transform.translate(x, y);
+    }
+
+    @Override
+    public void translate(double tx, double ty) {
+        transform.translate(tx, ty);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        transform.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        transform.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        transform.scale(sx, sy);
+    }
+
+    @Override
+    public void shear(double shx, double shy) {
+        transform.shear(shx, shy);
+    }
+
+    @Override
+    public void transform(AffineTransform tx) {
+        transform.concatenate(tx);
+    }
+
+    @Override
+    public void setTransform(AffineTransform tx) {
+        transform = new AffineTransform(tx);
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return new AffineTransform(transform);
+    }
+
+    @Override
+    public void clip(Shape s) {
+        if (s == null) {
+            setClip(null);
+            return;
+        }
+        Area area = new Area(transform.createTransformedShape(s));
+        if (clip != null) {
+            area.intersect(clip);
+        }
+        clip = area;
+        clipChanged();
+    }
+
+    @Override
+    public void setClip(Shape s) {
+        clip = s == null ? null : new Area(transform.createTransformedShape(s));
+        clipChanged();
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+        setClip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clipRect(int x, int y, int width, int height) {
+        clip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public Shape getClip() {
+        if (clip == null) {
+            return null;
+        }
+        try {
+            return transform.createInverse().createTransformedShape(clip);
+        } catch (NoninvertibleTransformException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public Rectangle getClipBounds() {
+        Shape s = getClip();
+        return s == null ? null : s.getBounds();
+    }
+
+    @Override
+    public void setPaintMode() {
+    }
+
+    @Override
+    public void setXORMode(Color c1) {
+    }
+
+    @Override
+    public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        draw(new Line2D.Float(x1, y1, x2, y2));
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height) {
+        fill(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height) {
+        fillBackground(new Rectangle(x, y, width, height), background);
+    }
+
+    @Override
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        draw(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        fill(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        draw(new Ellipse2D.Float(x, y, width, height));
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        fill(new Ellipse2D.Float(x, y, width, height));
+    }
+
+    @Override
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        draw(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+    }
+
+    @Override
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        fill(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+    }
+
+    @Override
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+        if (nPoints < 1) {
+            return;
+        }
+        Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, nPoints);
+        path.moveTo(xPoints[0], yPoints[0]);
+        for (int i = 1; i < nPoints; i++) {
+            path.lineTo(xPoints[i], yPoints[i]);
+        }
+        draw(path);
+    }
+
+    @Override
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        draw(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    @Override
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        fill(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    protected void fillBackground(Shape s, Color c) {
+        if (c == null) {
+            return;
+        }
+        Paint p = paint;
+        Color cc = color;
+        Composite comp = composite;
+        setColor(c);
+        composite = AlphaComposite.Src;
+        fill(s);
+        paint = p;
+        color = cc;
+        composite = comp;
+    }
+
+    protected BufferedImage toBufferedImage(Image img, ImageObserver observer) {
+        if (img instanceof BufferedImage) {
+            return (BufferedImage) img;
+        }
+        int w = img.getWidth(observer);
+        int h = img.getHeight(observer);
+        if (w <= 0 || h <= 0) {
+            return null;
+        }
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        boolean complete = g.drawImage(img, 0, 0, observer);
+        g.dispose();
+        return complete ? image : null;
+    }
+
+    /**
+     * @return true, if the transform keeps circles circular, so that a stroke
+     * can be written with a scaled width
+     */
+    protected static boolean isUniform(AffineTransform at) {
+        double eps = 1e-9 * (Math.abs(at.getScaleX()) + Math.abs(at.getShearX()) + 1e-300);
+        return (Math.abs(at.getScaleX() - at.getScaleY()) <= eps && Math.abs(at.getShearX() + at.getShearY()) <= eps)
+                || (Math.abs(at.getScaleX() + at.getScaleY()) <= eps && Math.abs(at.getShearX() - at.getShearY()) <= eps);
+    }
+}
@@ -0,0 +1,207 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.swing;
+
+import java.awt.AWTException;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.ImageCapabilities;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Pool of translucent offscreen images. Images are allocated with slack, so
+ * that a component growing by a few pixels or shrinking keeps using the
+ * images it has. Released images are handed out again and flushed once they
+ * stayed idle for the idle timeout. Expired images are flushed whenever the
+ * pool is used. The pool starts no timer of its own, an owner that may stay
+ * unused for a while, e.g. a displayed component, calls {@link #sweep()}
+ * periodically.
+ *
+ * @author Nils Hoffmann
+ */
+public class BufferPool {
+
+    /**
+     * Allocated sizes are rounded up to a multiple of this.
+     */
+    public static final int GRANULARITY = 64;
+    /**
+     * Images with more than this many times the requested area are not
+     * used for a request, to limit the memory held by small components.
+     */
+    public static final int MAX_OVERSIZE = 4;
+
+    private final List<Entry> idle = new ArrayList<Entry>();
+    private final int maxIdle;
+    private final int idleTimeout;
+    private int allocations = 0;
+
+    public BufferPool() {
+        this(8, 10000);
+    }
+
+    /**
+     * @param maxIdle the maximum number of idle images kept
+     * @param idleTimeout the time in milliseconds after which idle images are
+     * flushed
+     */
+    public BufferPool(int maxIdle, int idleTimeout) {
+        if (maxIdle < 0 || idleTimeout < 1) {
+            throw new IllegalArgumentException("maxIdle must be >= 0 and idleTimeout must be >= 1!");
+        }
+        this.maxIdle = maxIdle;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return the time in milliseconds after which idle images are flushed
+     */
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @return true, if the image is at least as large as requested and not
+     * excessively larger
+     */
+    public static boolean fits(Image image, int width, int height) {
+        int w = image.getWidth(null);
+        int h = image.getHeight(null);
+        return w >= width && h >= height && (long) w * h <= MAX_OVERSIZE * Math.max((long) width * height, (long) GRANULARITY * GRANULARITY);
+    }
+
+    /**
+     * @return a volatile image of at least the given size, compatible with the
+     * graphics configuration
+     */
+    public synchronized VolatileImage acquireVolatile(GraphicsConfiguration gc, int width, int height) {
+        sweep(System.currentTimeMillis());
+        for (Iterator<Entry> it = idle.iterator(); it.hasNext();) {
+            Entry e = it.next();
+            if (e.image instanceof VolatileImage && fits(e.image, width, height)) {
+                it.remove();
+                VolatileImage image = (VolatileImage) e.image;
+                if (image.validate(gc) != VolatileImage.IMAGE_INCOMPATIBLE) {
+                    return image;
+                }
+                image.flush();
+            }
+        }
+        allocations++;
+        return createVolatile(gc, allocationSize(width), allocationSize(height));
+    }
+
+    /**
+     * @return a managed image of at least the given size, compatible with the
+     * graphics configuration
+     */
+    public synchronized BufferedImage acquireManaged(GraphicsConfiguration gc, int width, int height) {
+        sweep(System.currentTimeMillis());
+        for (Iterator<Entry> it = idle.iterator(); it.hasNext();) {
+            Entry e = it.next();
+            if (e.image instanceof BufferedImage && fits(e.image, width, height)) {
+                it.remove();
+                return (BufferedImage) e.image;
+            }
+        }
+        allocations++;
+        return gc.createCompatibleImage(allocationSize(width), allocationSize(height), Transparency.TRANSLUCENT);
+    }
+
+    /**
+     * Returns an image to the pool. The oldest idle image is flushed if the
+     * pool is full.
+     */
+    public synchronized void release(Image image) {
+        if (image == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        sweep(now);
+        idle.add(new Entry(image, now));
+        while (idle.size() > maxIdle) {
+            idle.remove(0).image.flush();
+        }
+    }
+
+    /**
+     * Flushes all idle images.
+     */
+    public synchronized void clear() {
+        for (Entry e : idle) {
+            e.image.flush();
+        }
+        idle.clear();
+    }
+
+    /**
+     * Flushes the images that stayed idle for the idle timeout.
+     */
+    public synchronized void sweep() {
+        sweep(System.currentTimeMillis());
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of images allocated by this pool so far
+     */
+    public synchronized int getAllocationCount() {
+        return allocations;
+    }
+
+    private synchronized void sweep(long now) {
+        for (Iterator<Entry> it = idle.iterator(); it.hasNext();) {
+            Entry e = it.next();
+            if (now - e.released >= idleTimeout) {
+                e.image.flush();
+                it.remove();
+            }
+        }
+    }
+
+    private static int allocationSize(int size) {
+        int slack = Math.max(1, size) + size / 4;
+        return (slack + GRANULARITY - 1) / GRANULARITY * GRANULARITY;
+    }
+
+    private static VolatileImage createVolatile(GraphicsConfiguration gc, int width, int height) {
+        try {
+            return gc.createCompatibleVolatileImage(width, height, new ImageCapabilities(true), Transparency.TRANSLUCENT);
+        } catch (AWTException ex) {
+            //layers are composited, so they have to keep their transparency
+            return gc.createCompatibleVolatileImage(width, height, Transparency.TRANSLUCENT);
+        }
+    }
+
+    private static final class Entry {
+
+        private final Image image;
+        private final long released;
+
+        Entry(Image image, long released) {
+            this.image = image;
+            this.released = released;
+        }
+    }
+}
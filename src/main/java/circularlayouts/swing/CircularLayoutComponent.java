@@ -15,14 +15,18 @@
  */
 package circularlayouts.swing;
 
+import circularlayouts.layout.Matrix;
 import java.awt.BorderLayout;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.swing.SwingWorker;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -38,6 +42,7 @@ public class CircularLayoutComponent extends javax.swing.JPanel implements Chang
     private double sourceMargin = 0.0;
     private double segmentMargin = 0.05;
     private double segmentAngle = 0.0;
+    private RenderStatisticsListener statisticsListener;
 
     /**
      * Creates new form CircularLayoutComponent
@@ -58,10 +63,36 @@ public class CircularLayoutComponent extends javax.swing.JPanel implements Chang
             remove(panel);
         }
         panel = new CircularLayoutPanel();
+        panel.setRenderStatisticsListener(statisticsListener);
         add(panel, BorderLayout.CENTER);
         panel.setData(data);
     }
 
+    public void setData(Matrix data) {
+        if (panel != null) {
+            remove(panel);
+        }
+        panel = new CircularLayoutPanel();
+        panel.setRenderStatisticsListener(statisticsListener);
+        add(panel, BorderLayout.CENTER);
+        panel.setData(data);
+    }
+
+    public RenderStatisticsListener getRenderStatisticsListener() {
+        return statisticsListener;
+    }
+
+    /**
+     * @param statisticsListener the listener for the timings of the render
+     * loop, kept when new data is set, or null
+     */
+    public void setRenderStatisticsListener(RenderStatisticsListener statisticsListener) {
+        this.statisticsListener = statisticsListener;
+        if (panel != null) {
+            panel.setRenderStatisticsListener(statisticsListener);
+        }
+    }
+
     public double getSegmentSize() {
         return segmentSize;
     }
@@ -232,11 +263,32 @@ public class CircularLayoutComponent extends javax.swing.JPanel implements Chang
     }//GEN-LAST:event_jCheckBox1ActionPerformed
 
     private void jButton1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton1ActionPerformed
+        final Future<File> export;
         try {
-            this.panel.saveToSVG(File.createTempFile("CircularLayout", ".svg"));
+            export = this.panel.saveToSVG(File.createTempFile("CircularLayout", ".svg"));
         } catch (IOException ex) {
             Logger.getLogger(CircularLayoutComponent.class.getName()).log(Level.SEVERE, null, ex);
+            return;
         }
+        //the export runs in the background, the button is enabled again once it is done
+        jButton1.setEnabled(false);
+        new SwingWorker<File, Void>() {
+
+            @Override
+            protected File doInBackground() throws Exception {
+                return export.get();
+            }
+
+            @Override
+            protected void done() {
+                jButton1.setEnabled(true);
+                try {
+                    Logger.getLogger(CircularLayoutComponent.class.getName()).log(Level.INFO, "Saved chart to {0}", get());
+                } catch (InterruptedException | ExecutionException ex) {
+                    Logger.getLogger(CircularLayoutComponent.class.getName()).log(Level.SEVERE, "SVG export failed", ex);
+                }
+            }
+        }.execute();
     }//GEN-LAST:event_jButton1ActionPerformed
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
@@ -16,7 +16,14 @@
 package circularlayouts.swing;
 
 import circularlayouts.IDrawable;
+import circularlayouts.layout.LayoutParameters;
+import circularlayouts.layout.Matrix;
+import circularlayouts.layout.PolarHitIndex;
 import circularlayouts.layout.RatioLayoutBuilder;
+import circularlayouts.render.DisplayList;
+import circularlayouts.render.SvgGraphics2D;
+import circularlayouts.render.TileRenderer;
+import circularlayouts.tracks.DamageListener;
 import circularlayouts.tracks.Track;
 import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
@@ -31,31 +38,46 @@ import java.awt.Insets;
 import java.awt.Paint;
 import java.awt.Rectangle;
 import java.awt.Shape;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 import javax.swing.JComponent;
-import org.apache.batik.svggen.SVGGraphics2D;
-import org.apache.batik.svggen.SVGGraphics2DIOException;
-import org.apache.batik.dom.GenericDOMImplementation;
+import javax.swing.Timer;
 import org.jdesktop.core.animation.rendering.JRenderer;
 import org.jdesktop.core.animation.rendering.JRendererTarget;
 import org.jdesktop.core.animation.timing.Animator;
@@ -66,8 +88,6 @@ import org.jdesktop.swing.animation.rendering.JActiveRenderer;
 import org.jdesktop.swing.animation.rendering.JRendererFactory;
 import org.jdesktop.swing.animation.rendering.JRendererPanel;
 import org.jdesktop.swing.animation.timing.sources.SwingTimerTimingSource;
-import org.w3c.dom.DOMImplementation;
-import org.w3c.dom.Document;
 
 /**
  *
@@ -75,10 +95,19 @@ import org.w3c.dom.Document;
  */
 public class CircularLayoutPanel extends JComponent implements JRendererTarget<GraphicsConfiguration, Graphics2D>, MouseListener, MouseMotionListener, ComponentListener {
 
-    private Map<String, Track<? extends IDrawable>> shapes = new LinkedHashMap<String, Track<? extends IDrawable>>();
+    private volatile Map<String, Track<? extends IDrawable>> shapes = new LinkedHashMap<String, Track<? extends IDrawable>>();
+    private volatile Map<String, PolarHitIndex<IDrawable>> hitIndex = new LinkedHashMap<String, PolarHitIndex<IDrawable>>();
     private List<Shape> hoverSelected = null;
     private Shape selection = null;
     private AffineTransform at = null;
+    private AffineTransform viewport = null;
+    private AffineTransform rotation = null;
+    private int viewportWidth = 0, viewportHeight = 0;
+    private Map<String, PickBuffer> pickBuffers = new LinkedHashMap<String, PickBuffer>();
+    private volatile boolean usePickBuffer = false;
+    private volatile boolean cacheRotation = true;
+    //highlight stroke width plus a pixel for antialiasing
+    private static final int HIGHLIGHT_PAD = 3;
     private double segmentSize = 45.0d;
     private ChartSettings chartSettings = new ChartSettings();
     private Paint selectionColor = Color.LIGHT_GRAY;
@@ -87,6 +116,8 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
     private double targetMargin = 5.0d;
     private double segmentMargin = 0.05d;
     private VolatilePaintingComponent painter = new VolatilePaintingComponent();
+    //flushes idle layer images while the panel is displayed
+    private final Timer bufferSweeper;
     private boolean useBuffer = true;
     private JRendererPanel rendererPanel;
     private JRenderer renderer;
@@ -94,6 +125,40 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
     private boolean suspend = true;
 
     private RatioLayoutBuilder layoutBuilder;
+    private ForkJoinPool forkJoinPool = null;
+    private final ThreadPoolExecutor layoutExecutor = createExecutor("CircularLayoutPanel layout");
+    //exports do not queue behind layouts and vice versa
+    private final ThreadPoolExecutor exportExecutor = createExecutor("CircularLayoutPanel export");
+    private final AtomicLong layoutGeneration = new AtomicLong();
+    private volatile Future<?> pendingLayout;
+    //the inputs of the last layout that failed, tried again only once they change
+    private volatile FailedLayout failedLayout;
+    private volatile RenderStatisticsListener statisticsListener;
+    //at most one damage repaint is queued on the renderer at a time
+    private final AtomicBoolean damageScheduled = new AtomicBoolean();
+    private final DamageListener damageListener = new DamageListener() {
+
+        @Override
+        public void damaged(IDrawable source, Rectangle2D region) {
+            if (damageScheduled.compareAndSet(false, true)) {
+                repaintDamage();
+            }
+        }
+    };
+
+    private static ThreadPoolExecutor createExecutor(final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
     public List<Double> buildKeyFrames(int numberOfKeyFrames) {
         Double[] frames = new Double[numberOfKeyFrames];
@@ -140,6 +205,13 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
                 });
             }
         };
+        bufferSweeper = new Timer(painter.getBufferPool().getIdleTimeout(), new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                painter.getBufferPool().sweep();
+            }
+        });
         animator = new Animator.Builder(renderer.getTimingSource()).setDuration(5, TimeUnit.SECONDS).setRepeatCount(Animator.INFINITE).setRepeatBehavior(Animator.RepeatBehavior.LOOP).addTarget(tt).build();
         animator.start();
         animator.pause();
@@ -151,9 +223,86 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
 
     public void setData(double[][] data) {
         layoutBuilder = new RatioLayoutBuilder(data);
+        layoutBuilder.setForkJoinPool(forkJoinPool);
         rebuildShapes();
     }
 
+    public void setData(Matrix data) {
+        layoutBuilder = new RatioLayoutBuilder(data);
+        layoutBuilder.setForkJoinPool(forkJoinPool);
+        rebuildShapes();
+    }
+
+    /**
+     * @param forkJoinPool the pool for parallel layout and rasterization, or
+     * null for serial layout and painting
+     */
+    public void setForkJoinPool(final ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+        if (layoutBuilder != null) {
+            layoutBuilder.setForkJoinPool(forkJoinPool);
+        }
+        renderer.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                //layers are rasterized in tiles on the same pool
+                painter.setTileRenderer(forkJoinPool == null ? null : new TileRenderer(forkJoinPool));
+            }
+        });
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * @param statisticsListener the listener for frame, layout and hit test
+     * timings, e.g. a {@link RenderStatistics}, or null to take no timings
+     */
+    public void setRenderStatisticsListener(final RenderStatisticsListener statisticsListener) {
+        this.statisticsListener = statisticsListener;
+        renderer.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                painter.setRenderStatisticsListener(statisticsListener);
+            }
+        });
+    }
+
+    public RenderStatisticsListener getRenderStatisticsListener() {
+        return statisticsListener;
+    }
+
+    /**
+     * Off by default. A pick buffer holds a viewport sized image per track,
+     * which is rendered on the first hover after every layout or resize.
+     *
+     * @param usePickBuffer if true, hovering reads the drawable under the
+     * pointer from an offscreen id image instead of testing the geometry
+     */
+    public void setUsePickBuffer(boolean usePickBuffer) {
+        this.usePickBuffer = usePickBuffer;
+    }
+
+    public boolean isUsePickBuffer() {
+        return usePickBuffer;
+    }
+
+    /**
+     * @param cacheRotation if true, the rotation animation draws a single
+     * cached image of the scene per frame instead of all layers
+     */
+    public void setCacheRotation(boolean cacheRotation) {
+        this.cacheRotation = cacheRotation;
+        renderUpdate();
+    }
+
+    public boolean isCacheRotation() {
+        return cacheRotation;
+    }
+
     public boolean isSuspend() {
         return suspend;
     }
@@ -187,75 +336,233 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
         return best;
     }
 
-    @Override
-    public void setSize(int width, int height) {
-        super.setSize(width, height);
-        rebuildShapes();
-    }
-
-    @Override
-    public void setSize(Dimension d) {
-        super.setSize(d);
-        rebuildShapes();
-    }
-
     public void setSegmentAngle(double segmentAngle) {
         this.segmentAngle = segmentAngle;
         rebuildShapes();
     }
 
+    /**
+     * Schedules a new layout on the background layout executor. The layout is
+     * built in layout space and does not depend on the component size. A layout
+     * that is still in flight is cancelled. The current scene stays visible
+     * until the new one has been built and is swapped in on the renderer
+     * thread.
+     */
     private void rebuildShapes() {
 //        System.out.println("Rebuilding shapes");
-        double centerx = getWidth() / 2.0d;
-        double centery = getHeight() / 2.0d;
-        double rx = (Math.min(getWidth(), getHeight()) / 2.0d) - (Math.min(getWidth(), getHeight()) / 10.0d);
-        shapes.clear();
-        layoutBuilder.addTracks(segmentAngle, rx, centerx, centery, segmentSize, targetMargin, segmentMargin, sourceMargin, shapes);
+        final RatioLayoutBuilder builder = layoutBuilder;
+        if (builder == null) {
+            return;
+        }
+        final LayoutParameters parameters = new LayoutParameters();
+        parameters.setSegmentAngle(segmentAngle);
+        parameters.setSegmentSize(segmentSize);
+        parameters.setTargetMargin(targetMargin);
+        parameters.setSegmentMargin(segmentMargin);
+        parameters.setSourceMargin(sourceMargin);
+        FailedLayout failed = failedLayout;
+        if (failed != null && failed.builder == builder && failed.parameters.equals(parameters)) {
+            //the same inputs would fail again
+            return;
+        }
+        final long generation = layoutGeneration.incrementAndGet();
+        synchronized (layoutExecutor) {
+            if (pendingLayout != null) {
+                pendingLayout.cancel(true);
+            }
+            pendingLayout = layoutExecutor.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    RenderStatisticsListener listener = statisticsListener;
+                    long start = listener == null ? 0l : System.nanoTime();
+                    final Map<String, Track<? extends IDrawable>> newShapes = new LinkedHashMap<String, Track<? extends IDrawable>>();
+                    try {
+                        builder.addTracks(parameters, newShapes);
+                    } catch (CancellationException ex) {
+                        return;
+                    } catch (RuntimeException ex) {
+                        failedLayout = new FailedLayout(generation, builder, parameters);
+                        Logger.getLogger(CircularLayoutPanel.class.getName()).log(Level.SEVERE, "Layout " + generation + " failed", ex);
+                        return;
+                    }
+                    FailedLayout previous = failedLayout;
+                    if (previous != null && previous.generation < generation) {
+                        failedLayout = null;
+                    }
+                    final Map<String, PolarHitIndex<IDrawable>> newHitIndex = new LinkedHashMap<String, PolarHitIndex<IDrawable>>();
+                    for (Map.Entry<String, Track<? extends IDrawable>> e : newShapes.entrySet()) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                        newHitIndex.put(e.getKey(), new PolarHitIndex<IDrawable>(e.getValue().getChildren(), 0.0d, 0.0d));
+                    }
+                    if (listener != null) {
+                        listener.layoutBuilt(System.nanoTime() - start);
+                    }
+                    if (generation != layoutGeneration.get()) {
+                        return;
+                    }
+                    renderer.invokeLater(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            if (generation != layoutGeneration.get()) {
+                                return;
+                            }
+                            swapShapes(newShapes, newHitIndex);
+                            repaint();
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * The generation and the inputs of a layout that failed.
+     */
+    private static final class FailedLayout {
+
+        private final long generation;
+        private final RatioLayoutBuilder builder;
+        private final LayoutParameters parameters;
+
+        FailedLayout(long generation, RatioLayoutBuilder builder, LayoutParameters parameters) {
+            this.generation = generation;
+            this.builder = builder;
+            this.parameters = parameters;
+        }
+    }
+
+    private void swapShapes(Map<String, Track<? extends IDrawable>> newShapes, Map<String, PolarHitIndex<IDrawable>> newHitIndex) {
+        hoverSelected = null;
+        selection = null;
         painter.clear();
-        painter.setBounds(getBounds());
+        Map<String, PickBuffer> newPickBuffers = new LinkedHashMap<String, PickBuffer>();
         for (Track<? extends IDrawable> t : shapes.values()) {
-            painter.add(t);
+            t.setDamageListener(null);
+        }
+        for (Map.Entry<String, Track<? extends IDrawable>> e : newShapes.entrySet()) {
+            //changes of the drawables are repainted without a call to repaintDamage
+            e.getValue().setDamageListener(damageListener);
+            painter.add(e.getValue());
 //            painter.addAll(t.getChildren());
+            //no image is allocated until the first hover with pick buffers enabled
+            newPickBuffers.put(e.getKey(), new PickBuffer(e.getValue().getChildren()));
+        }
+        pickBuffers = newPickBuffers;
+        hitIndex = newHitIndex;
+        shapes = newShapes;
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        bufferSweeper.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        bufferSweeper.stop();
+        synchronized (layoutExecutor) {
+            if (pendingLayout != null) {
+                pendingLayout.cancel(true);
+                pendingLayout = null;
+            }
         }
+        super.removeNotify();
+    }
+
+    /**
+     * Writes the chart as SVG. The shapes are streamed to the file from a
+     * compact recording of the scene, no document is built in memory.
+     *
+     * @see #saveToSVG(java.io.File, boolean)
+     */
+    public Future<File> saveToSVG(File f) {
+        return saveToSVG(f, false);
+    }
+
+    /**
+     * Writes the chart as SVG, gzip compressed if the file name ends with
+     * {@code .svgz}. The current scene is recorded on the renderer thread and
+     * written on an export thread, so the caller, e.g. the event dispatch
+     * thread, is not blocked. Before, this method returned once the file had
+     * been written, call {@link Future#get()} to wait for it.
+     *
+     * @param f the file
+     * @param compact true, to write relative coordinates rounded to
+     * {@link SvgGraphics2D#DEFAULT_PRECISION} fraction digits
+     * @return the export, which yields the file once it has been written or
+     * fails with the cause
+     */
+    public Future<File> saveToSVG(File f, boolean compact) {
+        final SvgExport export = new SvgExport(f, compact);
+        final FutureTask<File> task = new FutureTask<File>(export);
         renderer.invokeLater(new Runnable() {
 
             @Override
             public void run() {
-                repaint();
+                try {
+                    //the drawables are only painted on the renderer thread
+                    export.record(painter);
+                } catch (RuntimeException ex) {
+                    export.failure = ex;
+                } finally {
+                    exportExecutor.execute(task);
+                }
             }
         });
+        return task;
     }
 
-    public void saveToSVG(File f) {
-        // Get a DOMImplementation.
-        DOMImplementation domImpl
-                = GenericDOMImplementation.getDOMImplementation();
-
-        // Create an instance of org.w3c.dom.Document.
-        String svgNS = "http://www.w3.org/2000/svg";
-        Document document = domImpl.createDocument(svgNS, "svg", null);
-
-        // Create an instance of the SVG Generator.
-        SVGGraphics2D svgGenerator = new SVGGraphics2D(document);
+    /**
+     * Writes a snapshot of the scene, taken as a display list in layout
+     * space, as SVG.
+     */
+    private static final class SvgExport implements Callable<File> {
+
+        private final File file;
+        private final boolean compact;
+        private DisplayList displayList;
+        private AffineTransform transform;
+        private Rectangle bounds;
+        private RuntimeException failure;
+
+        SvgExport(File file, boolean compact) {
+            this.file = file;
+            this.compact = compact;
+        }
 
-        // Ask the test to render into the SVG Graphics2D implementation.
-        painter.draw(svgGenerator, false);
+        void record(VolatilePaintingComponent painter) {
+            bounds = painter.getBounds();
+            transform = painter.getTransform();
+            displayList = DisplayList.record(painter.getDrawables());
+        }
 
-        // Finally, stream out SVG to the standard output using
-        // UTF-8 encoding.
-        boolean useCSS = true; // we want to use CSS style attributes
-        Writer out;
-        try {
-            out = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
-            svgGenerator.stream(out, useCSS);
-        } catch (SVGGraphics2DIOException ex) {
-            Logger.getLogger(CircularLayoutPanel.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(CircularLayoutPanel.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (UnsupportedEncodingException ex) {
-            Logger.getLogger(CircularLayoutPanel.class.getName()).log(Level.SEVERE, null, ex);
+        @Override
+        public File call() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            try (OutputStream os = openSVG(file);
+                    Writer out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"))) {
+                SvgGraphics2D svgGenerator = new SvgGraphics2D(out, bounds.width, bounds.height, compact ? SvgGraphics2D.DEFAULT_PRECISION : -1);
+                svgGenerator.transform(transform);
+                displayList.replay(svgGenerator);
+                svgGenerator.finish();
+            }
+            return file;
         }
+    }
 
+    private static OutputStream openSVG(File f) throws IOException {
+        OutputStream os = new FileOutputStream(f);
+        if (f.getName().toLowerCase().endsWith(".svgz")) {
+            return new GZIPOutputStream(os, 65536);
+        }
+        return os;
     }
 
     @Override
@@ -275,30 +582,48 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
 
     @Override
     public void render(Graphics2D g, int width, int height) {
+        RenderStatisticsListener listener = statisticsListener;
+        long start = listener == null ? 0l : System.nanoTime();
         Insets insets = getInsets();
 //		int width = getWidth() - insets.left - insets.right;
 //		int height = getHeight() - insets.top - insets.bottom;
         Shape clip = g.getClip();
-        g.setClip(new Rectangle(insets.left, insets.top, width, height));
+        //keep the clip of a partial repaint
+        g.clipRect(insets.left, insets.top, width, height);
         Graphics2D g2 = (Graphics2D) g.create();
         chartSettings.applySettings(g2);
         g2.setColor(Color.WHITE);
         g2.fillRect(insets.left, insets.top, width, height);
 //        g2.setColor(Color.BLUE);
         AffineTransform original = g2.getTransform();
-        at = AffineTransform.getRotateInstance(angle, width / 2.0d, height / 2.0d);
-        g2.setTransform(at);
+        AffineTransform viewport = RatioLayoutBuilder.createViewportTransform(0, 0, width, height);
+        if (!viewport.equals(this.viewport)) {
+            //resizing only changes the viewport, the layout is kept
+            painter.setBounds(new Rectangle(0, 0, width, height));
+            painter.setTransform(viewport);
+            this.viewport = viewport;
+        }
+        AffineTransform rotation = AffineTransform.getRotateInstance(angle, width / 2.0d, height / 2.0d);
+        g2.transform(rotation);
+        AffineTransform at = new AffineTransform(rotation);
+        at.concatenate(viewport);
+        this.at = at;
+        this.rotation = rotation;
+        this.viewportWidth = width;
+        this.viewportHeight = height;
         Composite originalComposite = g2.getComposite();
         Composite comp = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.75f);
         g2.setComposite(comp);
-        if (shapes == null || shapes.isEmpty()) {
-//            System.out.println("Rebuilding shapes!");
-//            System.out.println("Shapes: " + shapes);
-            rebuildShapes();
-        } else {
+        //the layout is built when the data or the parameters change, never from here
+        if (shapes != null && !shapes.isEmpty()) {
             g2.setStroke(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
 //            System.out.println("Painting!");
-            painter.draw(g2, useBuffer);
+            if (cacheRotation && useBuffer && !suspend) {
+                //the scene is static while it rotates, only the cached image is rotated
+                painter.drawCached(g2, width / 2.0d, height / 2.0d);
+            } else {
+                painter.draw(g2, useBuffer);
+            }
             g2.setColor(Color.BLACK);
         }
         if (hoverSelected != null) {
@@ -329,18 +654,119 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
             g2.setStroke(new BasicStroke(3.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
             g2.draw(transformed);
         }
-        int i = 0;
         g2.setColor(Color.BLACK);
-        g2.setTransform(at);
         g2.setTransform(original);
         g.setClip(clip);
         g2.dispose();
+        if (listener != null) {
+            listener.frameRendered(System.nanoTime() - start);
+        }
     }
 
     @Override
     public void renderShutdown() {
     }
 
+    /**
+     * Repaints the screen area covered by the previously and the newly
+     * highlighted shapes only.
+     */
+    private void repaintHighlight(List<Shape> previous, List<Shape> current) {
+        Rectangle damage = union(getScreenBounds(previous), getScreenBounds(current));
+        if (damage != null) {
+            rendererPanel.repaint(damage);
+        }
+    }
+
+    /**
+     * @return the screen bounds of the shapes, grown by the highlight stroke,
+     * or null for no shapes
+     */
+    private Rectangle getScreenBounds(List<Shape> shapes) {
+        Rectangle bounds = null;
+        if (shapes != null && at != null) {
+            for (Shape s : shapes) {
+                Rectangle r = at.createTransformedShape(s.getBounds2D()).getBounds();
+                r.grow(HIGHLIGHT_PAD, HIGHLIGHT_PAD);
+                bounds = union(bounds, r);
+            }
+        }
+        return bounds;
+    }
+
+    private static Rectangle union(Rectangle a, Rectangle b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.union(b);
+    }
+
+    /**
+     * Repaints only the screen area of drawables that changed since they were
+     * last painted, e.g. after a call to
+     * {@link IDrawable#setFill(java.awt.Paint)}. This is scheduled
+     * automatically when a drawable of the current scene reports damage.
+     */
+    public void repaintDamage() {
+        renderer.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                //damage reported from now on schedules the next repaint
+                damageScheduled.set(false);
+                Rectangle damage = painter.getDamage();
+                if (damage == null) {
+                    return;
+                }
+                if (rotation == null) {
+                    repaint();
+                } else {
+                    rendererPanel.repaint(rotation.createTransformedShape(damage).getBounds());
+                }
+            }
+        });
+    }
+
+    /**
+     * Maps a device point once into layout coordinates, where all drawables
+     * are tested without transforming their shapes.
+     */
+    private Point2D toLayout(Point2D point) {
+        try {
+            return at.inverseTransform(point, null);
+        } catch (NoninvertibleTransformException ex) {
+            //degenerate viewport, nothing can be hit
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the drawables under a device point in the pick buffers. The
+     * buffers are rendered without rotation, so only the current rotation is
+     * undone on the point. Buffers are rendered again only after the scene or
+     * the viewport changed.
+     */
+    private List<Shape> pick(Point2D point) {
+        List<Shape> picked = new ArrayList<Shape>();
+        Point2D p;
+        try {
+            p = rotation.inverseTransform(point, null);
+        } catch (NoninvertibleTransformException ex) {
+            return picked;
+        }
+        for (PickBuffer buffer : pickBuffers.values()) {
+            buffer.validate(viewportWidth, viewportHeight, viewport);
+            IDrawable d = buffer.pick(p.getX(), p.getY());
+            if (d != null) {
+                picked.add(d);
+            }
+        }
+        return picked;
+    }
+
     @Override
     public void mouseClicked(final MouseEvent me) {
         if (shapes != null && at != null) {
@@ -349,17 +775,25 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
                 public void run() {
                     int x = me.getX();
                     int y = me.getY();
-                    Point2D p = new Point2D.Double(x, y);
+                    Point2D p = toLayout(new Point2D.Double(x, y));
+                    if (p == null) {
+                        return;
+                    }
+                    Shape previous = selection;
                     selection = null;
-                    //simple linear hit test
-                    //all hits are highlighted
-                    for (IDrawable id : shapes.values()) {
-                        Shape s = id.select(at, p);
+                    RenderStatisticsListener listener = statisticsListener;
+                    long start = listener == null ? 0l : System.nanoTime();
+                    //only drawables in the polar cell under the point are tested
+                    for (PolarHitIndex<IDrawable> index : hitIndex.values()) {
+                        Shape s = index.select(p);
                         if (s != null) {
                             selection = s;
                             break;
                         }
                     }
+                    if (listener != null) {
+                        listener.hitTested(System.nanoTime() - start);
+                    }
                     if (selection != null) {
                         setCursor(new Cursor(Cursor.HAND_CURSOR));
                         if (!suspend) {
@@ -371,7 +805,9 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
                             animator.resume();
                         }
                     }
-                    repaint();
+                    if (previous != selection) {
+                        repaintHighlight(previous == null ? null : Collections.singletonList(previous), selection == null ? null : Collections.singletonList(selection));
+                    }
                 }
             };
             renderer.invokeLater(r);
@@ -407,15 +843,29 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
                     int x = me.getX();
                     int y = me.getY();
                     Point2D p = new Point2D.Double(x, y);
-                    hoverSelected = new ArrayList<Shape>();
-                    //simple linear hit test
-                    //all hits are highlighted
-                    for (IDrawable id : shapes.values()) {
-                        Shape s = id.select(at, p);
-                        if (s != null) {
-                            hoverSelected.add(s);
+                    List<Shape> previous = hoverSelected;
+                    RenderStatisticsListener listener = statisticsListener;
+                    long start = listener == null ? 0l : System.nanoTime();
+                    if (usePickBuffer) {
+                        hoverSelected = pick(p);
+                    } else {
+                        p = toLayout(p);
+                        if (p == null) {
+                            return;
+                        }
+                        hoverSelected = new ArrayList<Shape>();
+                        //only drawables in the polar cell under the point are tested
+                        //all hits are highlighted
+                        for (PolarHitIndex<IDrawable> index : hitIndex.values()) {
+                            Shape s = index.select(p);
+                            if (s != null) {
+                                hoverSelected.add(s);
+                            }
                         }
                     }
+                    if (listener != null) {
+                        listener.hitTested(System.nanoTime() - start);
+                    }
                     if (!hoverSelected.isEmpty() || selection != null) {
                         setCursor(new Cursor(Cursor.HAND_CURSOR));
                         if (!suspend) {
@@ -427,7 +877,9 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
                             animator.resume();
                         }
                     }
-                    repaint();
+                    if (previous == null || !previous.equals(hoverSelected)) {
+                        repaintHighlight(previous, hoverSelected);
+                    }
                 }
             };
             renderer.invokeLater(r);
@@ -436,7 +888,7 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
 
     @Override
     public void componentResized(ComponentEvent ce) {
-        rebuildShapes();
+        renderUpdate();
     }
 
     @Override
@@ -445,7 +897,9 @@ public class CircularLayoutPanel extends JComponent implements JRendererTarget<G
 
     @Override
     public void componentShown(ComponentEvent ce) {
-        rebuildShapes();
+        if (shapes == null || shapes.isEmpty()) {
+            rebuildShapes();
+        }
     }
 
     @Override
@@ -0,0 +1,141 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.swing;
+
+import circularlayouts.IDrawable;
+import circularlayouts.tracks.AnnularSector;
+import circularlayouts.tracks.Ribbon;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.List;
+
+/**
+ * Offscreen integer image in which every drawable of a track is filled with
+ * its own id as color. Picking a drawable is a single pixel read. The first
+ * drawable of the list is painted last, so that overlaps resolve to the same
+ * drawable as {@link IDrawable#select(java.awt.geom.Point2D)} on the track.
+ *
+ * The buffer is rendered without rotation, points have to be mapped into the
+ * unrotated viewport before picking.
+ *
+ * @author Nils Hoffmann
+ */
+public class PickBuffer {
+
+    /**
+     * Id 0 is reserved for the background.
+     */
+    public static final int MAX_DRAWABLES = 0xFFFFFF - 1;
+
+    private final List<? extends IDrawable> drawables;
+    private BufferedImage image;
+    private int[] pixels;
+    private int width;
+    private int height;
+    private AffineTransform transform;
+
+    public PickBuffer(List<? extends IDrawable> drawables) {
+        if (drawables.size() > MAX_DRAWABLES) {
+            throw new IllegalArgumentException("Pick buffer supports at most " + MAX_DRAWABLES + " drawables, got " + drawables.size());
+        }
+        this.drawables = drawables;
+    }
+
+    /**
+     * Renders the buffer if it has not been rendered for the given size and
+     * transform yet.
+     *
+     * @param width the width of the viewport
+     * @param height the height of the viewport
+     * @param transform the transform from layout to viewport coordinates
+     */
+    public void validate(int width, int height, AffineTransform transform) {
+        if (pixels != null && this.width == width && this.height == height && transform.equals(this.transform)) {
+            return;
+        }
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+        }
+        this.width = width;
+        this.height = height;
+        this.transform = new AffineTransform(transform);
+        Graphics2D g2 = image.createGraphics();
+        g2.setComposite(AlphaComposite.Src);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        //no normalization, pixels are set exactly where their center is inside
+        g2.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        g2.setColor(Color.BLACK);
+        g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g2.transform(transform);
+        //flatten to a tenth of a pixel, the rasterizer's own curve
+        //subdivision is too coarse for thin, overlapping ribbons
+        double flatness = 0.1d / Math.max(1e-9d, Math.sqrt(Math.abs(transform.getDeterminant())));
+        for (int i = drawables.size() - 1; i >= 0; i--) {
+            IDrawable d = drawables.get(i);
+            g2.setColor(new Color(i + 1));
+            fill(g2, d, flatness);
+            if (d instanceof Ribbon) {
+                AnnularSector connector = ((Ribbon) d).getConnector();
+                if (connector != null) {
+                    fill(g2, connector, flatness);
+                }
+            }
+        }
+        g2.dispose();
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private static void fill(Graphics2D g2, Shape shape, double flatness) {
+        Path2D.Float path = new Path2D.Float();
+        path.append(shape.getPathIterator(null, flatness), false);
+        g2.fill(path);
+    }
+
+    /**
+     * Marks the buffer for rendering on the next call to
+     * {@link #validate(int, int, java.awt.geom.AffineTransform)}.
+     */
+    public void invalidate() {
+        pixels = null;
+    }
+
+    public boolean isValid() {
+        return pixels != null;
+    }
+
+    /**
+     * @param x the x coordinate in the unrotated viewport
+     * @param y the y coordinate in the unrotated viewport
+     * @return the drawable painted at the pixel, or null for the background
+     * or a buffer that has not been rendered
+     */
+    public IDrawable pick(double x, double y) {
+        int[] p = pixels;
+        if (p == null || x < 0 || y < 0 || x >= width || y >= height) {
+            return null;
+        }
+        int id = p[(int) y * image.getWidth() + (int) x] & 0xFFFFFF;
+        return id == 0 ? null : drawables.get(id - 1);
+    }
+}
@@ -0,0 +1,242 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.swing;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Collects the timings of the render loop in lock free counters and
+ * publishes them as an MBean. Install it with
+ * {@link CircularLayoutPanel#setRenderStatisticsListener(RenderStatisticsListener)}
+ * and register it with the platform MBean server to watch it with JConsole
+ * or VisualVM.
+ *
+ * @author Nils Hoffmann
+ */
+public class RenderStatistics implements RenderStatisticsListener, RenderStatisticsMBean {
+
+    public static final String DEFAULT_NAME = "circularlayouts:type=RenderStatistics";
+    private static final long[] BOUNDS = {1, 2, 4, 8, 16, 33, 50, 100, 250, 500, 1000};
+    private static final double NANOS_PER_MILLI = 1000000.0d;
+    private static final long FPS_WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong frameNanos = new AtomicLong();
+    private final AtomicLong maxFrameNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong bufferCreations = new AtomicLong();
+    private final AtomicLong contentsLost = new AtomicLong();
+    private final AtomicLong layouts = new AtomicLong();
+    private final AtomicLong layoutNanos = new AtomicLong();
+    private final AtomicLong lastLayoutNanos = new AtomicLong();
+    private final AtomicLong hitTests = new AtomicLong();
+    private final AtomicLong hitTestNanos = new AtomicLong();
+    private final AtomicLong maxHitTestNanos = new AtomicLong();
+    //frames of the current and the last full second
+    private final Object window = new Object();
+    private long windowStart = System.nanoTime();
+    private int windowFrames;
+    private volatile long lastWindowEnd = windowStart;
+    private volatile double framesPerSecond;
+
+    @Override
+    public void frameRendered(long nanos) {
+        frames.incrementAndGet();
+        frameNanos.addAndGet(nanos);
+        max(maxFrameNanos, nanos);
+        histogram.incrementAndGet(bucket(nanos));
+        long now = System.nanoTime();
+        synchronized (window) {
+            windowFrames++;
+            long elapsed = now - windowStart;
+            if (elapsed >= FPS_WINDOW) {
+                framesPerSecond = windowFrames * (double) FPS_WINDOW / elapsed;
+                windowFrames = 0;
+                windowStart = now;
+                lastWindowEnd = now;
+            }
+        }
+    }
+
+    @Override
+    public void bufferCreated() {
+        bufferCreations.incrementAndGet();
+    }
+
+    @Override
+    public void contentsLost() {
+        contentsLost.incrementAndGet();
+    }
+
+    @Override
+    public void layoutBuilt(long nanos) {
+        layouts.incrementAndGet();
+        layoutNanos.addAndGet(nanos);
+        lastLayoutNanos.set(nanos);
+    }
+
+    @Override
+    public void hitTested(long nanos) {
+        hitTests.incrementAndGet();
+        hitTestNanos.addAndGet(nanos);
+        max(maxHitTestNanos, nanos);
+    }
+
+    private static void max(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private static int bucket(long nanos) {
+        int i = 0;
+        while (i < BOUNDS.length && nanos > BOUNDS[i] * 1000000l) {
+            i++;
+        }
+        return i;
+    }
+
+    private static double mean(AtomicLong nanos, AtomicLong count) {
+        long n = count.get();
+        return n == 0 ? 0.0d : nanos.get() / NANOS_PER_MILLI / n;
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    /**
+     * @return the frames rendered in the last full second, or 0 if no frame
+     * was rendered for more than a second, e.g. while the animation is
+     * suspended
+     */
+    @Override
+    public double getFramesPerSecond() {
+        return System.nanoTime() - lastWindowEnd > 2 * FPS_WINDOW ? 0.0d : framesPerSecond;
+    }
+
+    @Override
+    public double getMeanFrameTime() {
+        return mean(frameNanos, frames);
+    }
+
+    @Override
+    public double getMaxFrameTime() {
+        return maxFrameNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long[] getFrameTimeHistogramBounds() {
+        return BOUNDS.clone();
+    }
+
+    @Override
+    public long[] getFrameTimeHistogram() {
+        long[] counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public long getBufferCreationCount() {
+        return bufferCreations.get();
+    }
+
+    @Override
+    public long getContentsLostCount() {
+        return contentsLost.get();
+    }
+
+    @Override
+    public long getLayoutCount() {
+        return layouts.get();
+    }
+
+    @Override
+    public double getMeanLayoutTime() {
+        return mean(layoutNanos, layouts);
+    }
+
+    @Override
+    public double getLastLayoutTime() {
+        return lastLayoutNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getHitTestCount() {
+        return hitTests.get();
+    }
+
+    @Override
+    public double getMeanHitTestTime() {
+        return mean(hitTestNanos, hitTests);
+    }
+
+    @Override
+    public double getMaxHitTestTime() {
+        return maxHitTestNanos.get() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Sets all counters back to zero. Events arriving while the counters are
+     * reset may be partially counted.
+     */
+    @Override
+    public void reset() {
+        frames.set(0);
+        frameNanos.set(0);
+        maxFrameNanos.set(0);
+        for (int i = 0; i < histogram.length(); i++) {
+            histogram.set(i, 0);
+        }
+        bufferCreations.set(0);
+        contentsLost.set(0);
+        layouts.set(0);
+        layoutNanos.set(0);
+        lastLayoutNanos.set(0);
+        hitTests.set(0);
+        hitTestNanos.set(0);
+        maxHitTestNanos.set(0);
+    }
+
+    /**
+     * Registers the statistics with the platform MBean server.
+     *
+     * @param name the object name, e.g. {@link #DEFAULT_NAME}
+     * @return the name the statistics were registered with
+     * @throws JMException if the name is invalid or already taken
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public void unregister(ObjectName name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+}
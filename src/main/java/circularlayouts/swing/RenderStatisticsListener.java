@@ -0,0 +1,56 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.swing;
+
+/**
+ * Receives timings and events of the render loop of a
+ * {@link CircularLayoutPanel}. Methods are called on the thread that did
+ * the work, mostly the renderer thread and the layout thread, and must
+ * return quickly. Without a listener, the panel does not take any timings.
+ *
+ * @author Nils Hoffmann
+ * @see RenderStatistics
+ */
+public interface RenderStatisticsListener {
+
+    /**
+     * @param nanos the time it took to render a frame
+     */
+    void frameRendered(long nanos);
+
+    /**
+     * An offscreen image of a layer or the rotation cache had to be created
+     * again, e.g. after a resize or when the graphics configuration changed.
+     */
+    void bufferCreated();
+
+    /**
+     * The contents of a volatile image were lost while drawing a frame, so
+     * the frame is drawn again.
+     */
+    void contentsLost();
+
+    /**
+     * @param nanos the time it took to lay out the tracks and to index them
+     * for hit testing
+     */
+    void layoutBuilt(long nanos);
+
+    /**
+     * @param nanos the time it took to find the drawables under the mouse
+     */
+    void hitTested(long nanos);
+}
@@ -0,0 +1,59 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.swing;
+
+/**
+ * Management interface of {@link RenderStatistics}. Times are given in
+ * milliseconds.
+ *
+ * @author Nils Hoffmann
+ */
+public interface RenderStatisticsMBean {
+
+    long getFrameCount();
+
+    double getFramesPerSecond();
+
+    double getMeanFrameTime();
+
+    double getMaxFrameTime();
+
+    /**
+     * @return the upper bounds of the buckets of the frame time histogram,
+     * the last bucket holds all longer frames
+     */
+    long[] getFrameTimeHistogramBounds();
+
+    long[] getFrameTimeHistogram();
+
+    long getBufferCreationCount();
+
+    long getContentsLostCount();
+
+    long getLayoutCount();
+
+    double getMeanLayoutTime();
+
+    double getLastLayoutTime();
+
+    long getHitTestCount();
+
+    double getMeanHitTestTime();
+
+    double getMaxHitTestTime();
+
+    void reset();
+}
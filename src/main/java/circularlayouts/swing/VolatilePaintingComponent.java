@@ -16,39 +16,58 @@
 package circularlayouts.swing;
 
 import circularlayouts.IDrawable;
-import java.awt.AWTException;
-import java.awt.Color;
+import circularlayouts.render.TileRenderer;
+import circularlayouts.tracks.Track;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
 import java.awt.Graphics2D;
 import java.awt.GraphicsConfiguration;
-import java.awt.ImageCapabilities;
+import java.awt.Image;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Shape;
-import java.awt.TexturePaint;
-import java.awt.Transparency;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.awt.image.VolatileImage;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
+ * Paints a list of drawables, usually tracks, through per drawable layer
+ * images. A layer is only rasterized again when its drawable reports to be
+ * dirty, or when the bounds or the transform of the component change. All
+ * layers are composited in the order the drawables were added.
  *
  * @author Nils Hoffmann
  */
 public class VolatilePaintingComponent implements Shape {
 
-    private VolatileImage buffer;
-    private TexturePaint tp;
     private GraphicsConfiguration graphicsConfiguration;
     private List<IDrawable> drawables = new ArrayList<IDrawable>();
+    private List<Layer> layers = new ArrayList<Layer>();
     private boolean dirty = true;
+    private float lineWidth = 1.0f;
+    private boolean accelerated = true;
+    private boolean accelerationEnabled = true;
+    private final BufferPool pool = new BufferPool();
+    private TileRenderer tileRenderer;
+    private RenderStatisticsListener statisticsListener;
+    private final Layer cache = new Layer(null);
+    private Rectangle cacheSquare;
+    private Rectangle2D contentBounds;
     private Shape bounds;
+    private AffineTransform transform = new AffineTransform();
 
     public boolean addAll(Collection<? extends IDrawable> c) {
-        return drawables.addAll(c);
+        for (IDrawable d : c) {
+            add(d);
+        }
+        return !c.isEmpty();
     }
 
     @Override
@@ -93,22 +112,40 @@ public class VolatilePaintingComponent implements Shape {
 
     public boolean add(IDrawable e) {
         boolean b = drawables.add(e);
-        dirty = true;
+        layers.add(new Layer(e));
+        contentBounds = null;
         return b;
     }
 
+    /**
+     * @return the drawables in painting order, not modifiable
+     */
+    public List<IDrawable> getDrawables() {
+        return Collections.unmodifiableList(drawables);
+    }
+
     public boolean remove(Object o) {
         if (o instanceof IDrawable) {
-            boolean b = drawables.remove((IDrawable) o);
-            dirty = true;
-            return b;
+            int index = drawables.indexOf(o);
+            if (index >= 0) {
+                drawables.remove(index);
+                layers.remove(index).release(pool);
+                contentBounds = null;
+                return true;
+            }
         }
         return false;
     }
 
     public void clear() {
         drawables.clear();
-        dirty = true;
+        //the images are reused by the layers of the next scene
+        for (Layer layer : layers) {
+            layer.release(pool);
+        }
+        layers.clear();
+        cache.release(pool);
+        contentBounds = null;
     }
 
     @Override
@@ -131,77 +168,417 @@ public class VolatilePaintingComponent implements Shape {
         dirty = true;
     }
 
+    public AffineTransform getTransform() {
+        return new AffineTransform(transform);
+    }
+
+    /**
+     * Sets the transform from drawable coordinates to buffer coordinates, e.g.
+     * the viewport transform of a layout built in layout space.
+     *
+     * @param transform the content transform
+     */
+    public void setTransform(AffineTransform transform) {
+        this.transform = new AffineTransform(transform);
+        contentBounds = null;
+        dirty = true;
+    }
+
     public GraphicsConfiguration getGraphicsConfiguration() {
         return graphicsConfiguration;
     }
 
     public void setGraphicsConfiguration(GraphicsConfiguration graphicsConfiguration) {
+        if (graphicsConfiguration != this.graphicsConfiguration) {
+            //a new device may accelerate again
+            accelerated = true;
+        }
         this.graphicsConfiguration = graphicsConfiguration;
     }
 
     public void draw(Graphics2D g, boolean useBuffer) {
         if (!useBuffer) {
-            paintContent(g);
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.transform(transform);
+            paintContent(g2);
+            g2.dispose();
+            //the drawables are clean now, their damage is not known to the layers
+            dirty = true;
             return;
         }
         if (graphicsConfiguration == null) {
             setGraphicsConfiguration(g.getDeviceConfiguration());
         }
-        if (buffer == null || dirty) {
-            createBuffer();
+        //avoid negative size exception due to invalid bounds
+        int width = Math.max(1, getBounds().width);
+        int height = Math.max(1, getBounds().height);
+        if (g.getStroke() instanceof BasicStroke) {
+            lineWidth = ((BasicStroke) g.getStroke()).getLineWidth();
         }
+        boolean contentsLost;
+        do {
+            boolean useVolatile = accelerated && accelerationEnabled;
+            renderLayers(g, width, height, useVolatile);
+            if (useVolatile && !isLayersAccelerated(graphicsConfiguration)) {
+                //acceleration is lost, keep the layers in managed images
+                accelerated = false;
+                contentsLost = true;
+                continue;
+            }
+            contentsLost = false;
+            for (Layer layer : layers) {
+                //translucent layers keep their antialiased edges
+                g.drawImage(layer.getImage(), 0, 0, width, height, 0, 0, width, height, null);
+                contentsLost |= layer.contentsLost();
+            }
+            if (contentsLost && statisticsListener != null) {
+                statisticsListener.contentsLost();
+            }
+        } while (contentsLost);
+    }
 
+    /**
+     * Draws all layers from a single cached image of the square around the
+     * given center that holds the complete content. The cache is only
+     * composited again when a layer changed, so a caller that merely rotates
+     * the graphics around the center draws one image per frame.
+     *
+     * @param g the target graphics, e.g. rotated around the center
+     * @param centerx the x coordinate of the center of rotation
+     * @param centery the y coordinate of the center of rotation
+     */
+    public void drawCached(Graphics2D g, double centerx, double centery) {
+        if (graphicsConfiguration == null) {
+            setGraphicsConfiguration(g.getDeviceConfiguration());
+        }
+        int width = Math.max(1, getBounds().width);
+        int height = Math.max(1, getBounds().height);
+        if (g.getStroke() instanceof BasicStroke) {
+            lineWidth = ((BasicStroke) g.getStroke()).getLineWidth();
+        }
+        boolean contentsLost;
         do {
-            GraphicsConfiguration gc = graphicsConfiguration;
-            int valCode = buffer.validate(gc);
-            if (valCode == VolatileImage.IMAGE_INCOMPATIBLE) {
-                createBuffer();
-            }
-            if (dirty) {
-                Graphics2D offscreenGraphics = buffer.createGraphics();
-                offscreenGraphics.setPaint(g.getPaint());
-                offscreenGraphics.setColor(g.getColor());
-                offscreenGraphics.setStroke(g.getStroke());
-                offscreenGraphics.setBackground(g.getBackground());
-                offscreenGraphics.setClip(g.getClip());
-                offscreenGraphics.setComposite(g.getComposite());
-                offscreenGraphics.setFont(g.getFont());
-                offscreenGraphics.setRenderingHints(g.getRenderingHints());
-                paintContent(offscreenGraphics);
-                tp = new TexturePaint(buffer.getSnapshot(), new Rectangle2D.Double(0, 0, buffer.getWidth(), buffer.getHeight()));
-                offscreenGraphics.dispose();
-            }
-            g.setColor(Color.WHITE);
-            g.fillRect(0, 0, buffer.getWidth(), buffer.getHeight());
-            // paint from buffer as texture paint for edge anti-aliasing of image
-            g.setPaint(tp);
-            g.fillRect(0, 0, buffer.getWidth(), buffer.getHeight());
-        } while (buffer.contentsLost());
+            boolean useVolatile = accelerated && accelerationEnabled;
+            boolean changed = renderLayers(g, width, height, useVolatile);
+            if (useVolatile && !isLayersAccelerated(graphicsConfiguration)) {
+                accelerated = false;
+                contentsLost = true;
+                continue;
+            }
+            Rectangle square = getContentSquare(centerx, centery);
+            if (validate(cache, square.width, square.height, useVolatile) || changed || !square.equals(cacheSquare)) {
+                cacheSquare = square;
+                Graphics2D cacheGraphics = cache.createGraphics();
+                cacheGraphics.setComposite(AlphaComposite.Clear);
+                cacheGraphics.fillRect(0, 0, square.width, square.height);
+                //the layers are blended as in draw, the cache is drawn opaque
+                cacheGraphics.setComposite(g.getComposite());
+                for (Layer layer : layers) {
+                    cacheGraphics.drawImage(layer.getImage(), -square.x, -square.y, width - square.x, height - square.y, 0, 0, width, height, null);
+                }
+                cacheGraphics.dispose();
+            }
+            contentsLost = cache.contentsLost();
+            for (Layer layer : layers) {
+                contentsLost |= layer.contentsLost();
+            }
+            if (!contentsLost) {
+                Graphics2D g2 = (Graphics2D) g.create();
+                g2.setComposite(AlphaComposite.SrcOver);
+                Object interpolation = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+                if (interpolation == null || interpolation == RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR) {
+                    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                }
+                g2.drawImage(cache.getImage(), square.x, square.y, square.x + square.width, square.y + square.height, 0, 0, square.width, square.height, null);
+                g2.dispose();
+            } else if (statisticsListener != null) {
+                statisticsListener.contentsLost();
+            }
+        } while (contentsLost);
+    }
+
+    /**
+     * Renders layers that are new, dirty or lost.
+     *
+     * @return true, if any layer was rendered
+     */
+    private boolean renderLayers(Graphics2D g, int width, int height, boolean useVolatile) {
+        boolean changed = false;
+        for (Layer layer : layers) {
+            //read before painting, damage reported while painting is kept
+            boolean damaged = layer.drawable.isDirty();
+            if (validate(layer, width, height, useVolatile) || dirty) {
+                layer.render(g, transform, null, tileRenderer);
+                changed = true;
+            } else if (damaged) {
+                //only the damaged part of the layer is cleared and painted
+                layer.render(g, transform, toDevice(layer.drawable.getDamage()), tileRenderer);
+                changed = true;
+            }
+        }
+        dirty = false;
+        return changed;
+    }
+
+    /**
+     * Validates the image of a layer and reports it to the statistics
+     * listener if it had to be created again.
+     *
+     * @return true, if the contents of the layer have to be rendered
+     */
+    private boolean validate(Layer layer, int width, int height, boolean useVolatile) {
+        Image image = layer.getImage();
+        boolean invalid = layer.validate(pool, graphicsConfiguration, width, height, useVolatile);
+        if (statisticsListener != null && layer.getImage() != image) {
+            statisticsListener.bufferCreated();
+        }
+        return invalid;
+    }
+
+    /**
+     * @return the smallest square around the center that holds the content of
+     * all layers, with the stroke and a pixel for antialiasing added
+     */
+    private Rectangle getContentSquare(double centerx, double centery) {
+        if (contentBounds == null) {
+            Rectangle2D union = null;
+            for (IDrawable d : drawables) {
+                Rectangle2D b = d.getBounds2D();
+                if (d instanceof Track) {
+                    //children may paint outside of the track, e.g. labels
+                    for (Object child : ((Track<?>) d).getChildren()) {
+                        b.add(((Shape) child).getBounds2D());
+                    }
+                }
+                if (union == null) {
+                    union = b;
+                } else {
+                    union.add(b);
+                }
+            }
+            contentBounds = union == null ? new Rectangle2D.Double() : transform.createTransformedShape(union).getBounds2D();
+        }
+        double dx = Math.max(Math.abs(contentBounds.getMinX() - centerx), Math.abs(contentBounds.getMaxX() - centerx));
+        double dy = Math.max(Math.abs(contentBounds.getMinY() - centery), Math.abs(contentBounds.getMaxY() - centery));
+        int r = (int) Math.ceil(Math.max(dx, dy) + lineWidth * Math.sqrt(Math.abs(transform.getDeterminant())) / 2.0d + 2.0d);
+        return new Rectangle((int) Math.floor(centerx) - r, (int) Math.floor(centery) - r, 2 * r, 2 * r);
+    }
+
+    private boolean isLayersAccelerated(GraphicsConfiguration gc) {
+        for (Layer layer : layers) {
+            if (!layer.image.getCapabilities(gc).isAccelerated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true, if the layers are kept in accelerated volatile images,
+     * false if they fell back to managed images
+     */
+    public boolean isAccelerated() {
+        return accelerated && accelerationEnabled;
+    }
+
+    /**
+     * @param accelerationEnabled false to always keep the layers in managed
+     * images, e.g. to compare frame times
+     */
+    public void setAccelerationEnabled(boolean accelerationEnabled) {
+        this.accelerationEnabled = accelerationEnabled;
+        dirty = true;
+    }
+
+    public boolean isAccelerationEnabled() {
+        return accelerationEnabled;
+    }
+
+    public BufferPool getBufferPool() {
+        return pool;
+    }
+
+    public TileRenderer getTileRenderer() {
+        return tileRenderer;
+    }
+
+    /**
+     * @param tileRenderer the renderer for the layers, e.g. to rasterize them
+     * in parallel, or null to draw them directly
+     */
+    public void setTileRenderer(TileRenderer tileRenderer) {
+        this.tileRenderer = tileRenderer;
+    }
+
+    public RenderStatisticsListener getRenderStatisticsListener() {
+        return statisticsListener;
+    }
+
+    /**
+     * @param statisticsListener the listener to report re-created images and
+     * lost contents to, or null
+     */
+    public void setRenderStatisticsListener(RenderStatisticsListener statisticsListener) {
+        this.statisticsListener = statisticsListener;
+    }
+
+    /**
+     * @return the region of the component, without any transform applied by
+     * the caller, that changed since the last call to
+     * {@link #draw(java.awt.Graphics2D, boolean)}, or null if nothing changed
+     */
+    public Rectangle getDamage() {
+        if (dirty) {
+            return getBounds();
+        }
+        Rectangle damage = null;
+        for (IDrawable d : drawables) {
+            if (d.isDirty()) {
+                Rectangle r = toDevice(d.getDamage());
+                if (r == null) {
+                    return getBounds();
+                }
+                if (damage == null) {
+                    damage = r;
+                } else {
+                    damage.add(r);
+                }
+            }
+        }
+        return damage;
+    }
+
+    /**
+     * Maps a damaged region of a drawable to the component, grown by the
+     * stroke width and a pixel for antialiasing.
+     */
+    private Rectangle toDevice(Rectangle2D damage) {
+        if (damage == null) {
+            return null;
+        }
+        double pad = 2.0d + lineWidth * Math.sqrt(Math.abs(transform.getDeterminant())) / 2.0d;
+        Rectangle2D r = transform.createTransformedShape(damage).getBounds2D();
+        r.setRect(r.getX() - pad, r.getY() - pad, r.getWidth() + 2 * pad, r.getHeight() + 2 * pad);
+        return r.getBounds();
     }
 
     protected void paintContent(Graphics2D g2) {
 //        System.out.println("Creating content!");
         for (IDrawable drawable : drawables) {
+            //read before painting, damage reported while painting is kept
+            drawable.isDirty();
             drawable.draw(g2);
         }
+        for (IDrawable drawable : drawables) {
+            drawable.clearDamage();
+        }
         dirty = false;
     }
 
-    // This method produces a new volatile image.
-    private void createBuffer() {
-        GraphicsConfiguration gc = getGraphicsConfiguration();
-        //avoid negative size exception due to invalid bounds
-        int width = Math.max(1, getBounds().width);
-        int height = Math.max(1, getBounds().height);
-        try {
-            buffer = gc.createCompatibleVolatileImage(width, height, new ImageCapabilities(true), Transparency.TRANSLUCENT);
-        } catch (AWTException ex) {
-            try {
-                buffer = gc.createCompatibleVolatileImage(width, height, new ImageCapabilities(true), Transparency.OPAQUE);
-            } catch (AWTException ex1) {
-                buffer = gc.createCompatibleVolatileImage(width, height, Transparency.OPAQUE);
+    /**
+     * The cached image of a single drawable, or of the composited layers if
+     * the drawable is null. The image is either a volatile image or a
+     * managed image if acceleration is not available. The image may be
+     * larger than the layer, only its upper left part is used.
+     */
+    private static final class Layer {
+
+        private final IDrawable drawable;
+        private VolatileImage image;
+        private BufferedImage managedImage;
+        private int width;
+        private int height;
+
+        Layer(IDrawable drawable) {
+            this.drawable = drawable;
+        }
+
+        Image getImage() {
+            return image != null ? image : managedImage;
+        }
+
+        Graphics2D createGraphics() {
+            return image != null ? image.createGraphics() : managedImage.createGraphics();
+        }
+
+        boolean contentsLost() {
+            return image != null && image.contentsLost();
+        }
+
+        /**
+         * Makes sure that the image exists, is large enough and is compatible
+         * with the graphics configuration. Images are taken from and returned
+         * to the pool.
+         *
+         * @return true, if the contents of the image have to be rendered
+         */
+        boolean validate(BufferPool pool, GraphicsConfiguration gc, int width, int height, boolean useVolatile) {
+            boolean resized = this.width != width || this.height != height;
+            this.width = width;
+            this.height = height;
+            if (!useVolatile) {
+                if (image != null || managedImage == null || !BufferPool.fits(managedImage, width, height)) {
+                    release(pool);
+                    managedImage = pool.acquireManaged(gc, width, height);
+                    return true;
+                }
+                return resized;
+            }
+            if (managedImage != null || image == null || !BufferPool.fits(image, width, height)) {
+                release(pool);
+                image = pool.acquireVolatile(gc, width, height);
+                return true;
             }
+            int valCode = image.validate(gc);
+            if (valCode == VolatileImage.IMAGE_INCOMPATIBLE) {
+                image.flush();
+                image = pool.acquireVolatile(gc, width, height);
+                return true;
+            }
+            return resized || valCode == VolatileImage.IMAGE_RESTORED;
+        }
+
+        /**
+         * Paints the drawable into the layer, either completely or only
+         * inside the given region, with the tile renderer if one is given, and
+         * clears the damage of the drawable. The clip of the target graphics
+         * is not applied, a layer always holds the complete drawable.
+         */
+        void render(Graphics2D g, AffineTransform transform, Rectangle region, TileRenderer tileRenderer) {
+            Graphics2D offscreenGraphics = createGraphics();
+            offscreenGraphics.clipRect(0, 0, width, height);
+            if (region != null) {
+                offscreenGraphics.clipRect(region.x, region.y, region.width, region.height);
+            }
+            offscreenGraphics.setComposite(AlphaComposite.Clear);
+            offscreenGraphics.fillRect(0, 0, width, height);
+            offscreenGraphics.setPaint(g.getPaint());
+            offscreenGraphics.setColor(g.getColor());
+            offscreenGraphics.setStroke(g.getStroke());
+            offscreenGraphics.setBackground(g.getBackground());
+            offscreenGraphics.setComposite(g.getComposite());
+            offscreenGraphics.setFont(g.getFont());
+            offscreenGraphics.setRenderingHints(g.getRenderingHints());
+            if (tileRenderer != null) {
+                Rectangle area = new Rectangle(0, 0, width, height);
+                if (region != null) {
+                    area = area.intersection(region);
+                }
+                tileRenderer.render(Collections.singletonList(drawable), transform, offscreenGraphics, area);
+            } else {
+                offscreenGraphics.transform(transform);
+                drawable.draw(offscreenGraphics);
+            }
+            offscreenGraphics.dispose();
+            //all tiles are done, the damage is cleared on this thread only
+            drawable.clearDamage();
+        }
+
+        void release(BufferPool pool) {
+            pool.release(image);
+            pool.release(managedImage);
+            image = null;
+            managedImage = null;
         }
-        dirty = true;
     }
 }
@@ -0,0 +1,126 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.tracks;
+
+import circularlayouts.IDrawable;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Keeps the dirty state and the damaged region of a drawable until it is
+ * painted again. Every change is also reported to the damage listener, usually
+ * the track that holds the drawable.
+ *
+ * Changes are usually made on the event dispatch thread while a painter reads
+ * and clears the damage on its own thread, so the state is guarded by a lock.
+ * Damage reported after the painter last read the state survives
+ * {@link #clearDamage()} and is painted the next time.
+ *
+ * @author Nils Hoffmann
+ */
+public abstract class AbstractDrawable implements IDrawable {
+
+    private final Object damageLock = new Object();
+    private boolean dirty = false;
+    private Rectangle2D damage;
+    //damage reported since the last call to isDirty or getDamage
+    private boolean unread = false;
+    private volatile DamageListener damageListener;
+
+    /**
+     * Adds a region that has to be painted again and marks the drawable as
+     * dirty.
+     *
+     * @param r the region, in the coordinates of this drawable
+     */
+    protected void damage(Rectangle2D r) {
+        addDamage(r);
+        //outside of the lock, the listener takes the lock of the track
+        DamageListener listener = damageListener;
+        if (listener != null) {
+            listener.damaged(this, r);
+        }
+    }
+
+    /**
+     * Adds a region that has to be painted again without reporting it to the
+     * listener.
+     *
+     * @param r the region, in the coordinates of this drawable
+     */
+    protected void addDamage(Rectangle2D r) {
+        synchronized (damageLock) {
+            if (damage == null) {
+                //in double precision, whatever the caller passes
+                damage = new Rectangle2D.Double();
+                damage.setRect(r);
+            } else {
+                damage.add(r);
+            }
+            dirty = true;
+            unread = true;
+        }
+    }
+
+    @Override
+    public boolean isDirty() {
+        synchronized (damageLock) {
+            unread = false;
+            return dirty;
+        }
+    }
+
+    @Override
+    public Rectangle2D getDamage() {
+        synchronized (damageLock) {
+            unread = false;
+            return damage == null ? null : damage.getBounds2D();
+        }
+    }
+
+    /**
+     * Marks the drawable as painted, unless damage was reported after the
+     * last call to {@link #isDirty()} or {@link #getDamage()}.
+     */
+    @Override
+    public void clearDamage() {
+        synchronized (damageLock) {
+            if (!unread) {
+                dirty = false;
+                damage = null;
+            }
+        }
+    }
+
+    /**
+     * Marks the drawable as painted. The track of the drawable calls this,
+     * it keeps the damage of its children itself.
+     */
+    void resetDamage() {
+        synchronized (damageLock) {
+            dirty = false;
+            damage = null;
+            unread = false;
+        }
+    }
+
+    public DamageListener getDamageListener() {
+        return damageListener;
+    }
+
+    public void setDamageListener(DamageListener damageListener) {
+        this.damageListener = damageListener;
+    }
+}
@@ -0,0 +1,155 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.tracks;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * The region between two concentric arcs, bounded by two radial lines.
+ * Angles are given as fractions of a full turn and run counter-clockwise on
+ * screen, as for {@link Arc2D}. Point containment is decided analytically
+ * from radius and angle, the outline path is only built when it is needed
+ * for rendering or rectangle tests.
+ *
+ * @author Nils Hoffmann
+ */
+public class AnnularSector implements Shape {
+
+    private final double centerx;
+    private final double centery;
+    private final double innerRadius;
+    private final double outerRadius;
+    private final double startAngle;
+    private final double extent;
+    private volatile Path2D.Double path;
+
+    public AnnularSector(double centerx, double centery, double innerRadius, double outerRadius, double startAngle, double endAngle) {
+        this.centerx = centerx;
+        this.centery = centery;
+        this.innerRadius = Math.min(innerRadius, outerRadius);
+        this.outerRadius = Math.max(innerRadius, outerRadius);
+        this.startAngle = startAngle;
+        this.extent = endAngle - startAngle;
+    }
+
+    public double getCenterx() {
+        return centerx;
+    }
+
+    public double getCentery() {
+        return centery;
+    }
+
+    public double getInnerRadius() {
+        return innerRadius;
+    }
+
+    public double getOuterRadius() {
+        return outerRadius;
+    }
+
+    public double getStartAngle() {
+        return startAngle;
+    }
+
+    public double getEndAngle() {
+        return startAngle + extent;
+    }
+
+    private Path2D.Double getPath() {
+        Path2D.Double p = path;
+        if (p == null) {
+            double start = Math.toDegrees(2 * Math.PI * startAngle);
+            double ext = Math.toDegrees(2 * Math.PI * extent);
+            p = new Path2D.Double(Path2D.WIND_NON_ZERO, 16);
+            p.append(new Arc2D.Double(centerx - outerRadius, centery - outerRadius, 2 * outerRadius, 2 * outerRadius, start, ext, Arc2D.OPEN), false);
+            p.append(new Arc2D.Double(centerx - innerRadius, centery - innerRadius, 2 * innerRadius, 2 * innerRadius, start + ext, -ext, Arc2D.OPEN), true);
+            p.closePath();
+            path = p;
+        }
+        return p;
+    }
+
+    @Override
+    public boolean contains(double x, double y) {
+        double dx = x - centerx;
+        double dy = centery - y;
+        double r2 = dx * dx + dy * dy;
+        if (r2 < innerRadius * innerRadius || r2 > outerRadius * outerRadius) {
+            return false;
+        }
+        double width = Math.abs(extent);
+        if (width >= 1.0d) {
+            return true;
+        }
+        double from = extent < 0 ? startAngle + extent : startAngle;
+        double d = Math.atan2(dy, dx) / (2 * Math.PI) - from;
+        d -= Math.floor(d);
+        return d <= width;
+    }
+
+    @Override
+    public boolean contains(Point2D p) {
+        return contains(p.getX(), p.getY());
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return getPath().getBounds();
+    }
+
+    @Override
+    public Rectangle2D getBounds2D() {
+        return getPath().getBounds2D();
+    }
+
+    @Override
+    public boolean intersects(double x, double y, double w, double h) {
+        return getPath().intersects(x, y, w, h);
+    }
+
+    @Override
+    public boolean intersects(Rectangle2D r) {
+        return getPath().intersects(r);
+    }
+
+    @Override
+    public boolean contains(double x, double y, double w, double h) {
+        return getPath().contains(x, y, w, h);
+    }
+
+    @Override
+    public boolean contains(Rectangle2D r) {
+        return getPath().contains(r);
+    }
+
+    @Override
+    public PathIterator getPathIterator(AffineTransform at) {
+        return getPath().getPathIterator(at);
+    }
+
+    @Override
+    public PathIterator getPathIterator(AffineTransform at, double flatness) {
+        return getPath().getPathIterator(at, flatness);
+    }
+}
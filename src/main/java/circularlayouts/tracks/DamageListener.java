@@ -0,0 +1,34 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.tracks;
+
+import circularlayouts.IDrawable;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Is told about regions of a drawable that have to be painted again, e.g.
+ * after the fill of a segment changed.
+ *
+ * @author Nils Hoffmann
+ */
+public interface DamageListener {
+
+    /**
+     * @param source the drawable that changed
+     * @param region the changed region, in the coordinates of the drawable
+     */
+    public void damaged(IDrawable source, Rectangle2D region);
+}
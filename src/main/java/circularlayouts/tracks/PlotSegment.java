@@ -15,7 +15,6 @@
  */
 package circularlayouts.tracks;
 
-import circularlayouts.IDrawable;
 import circularlayouts.PolarCoordinates;
 import static circularlayouts.layout.RatioLayoutBuilder.createCurvedSegment;
 import java.awt.BasicStroke;
@@ -34,7 +33,7 @@ import java.awt.geom.Rectangle2D;
  *
  * @author Nils Hoffmann
  */
-public class PlotSegment implements IDrawable {
+public class PlotSegment extends AbstractDrawable {
 
     private Paint fill = Color.BLUE;
     private Paint outline = Color.DARK_GRAY;
@@ -44,9 +43,9 @@ public class PlotSegment implements IDrawable {
     private double centery;
     private final double startAngle;
     private final double endAngle;
-    private boolean dirty = false;
     private String name = "";
     private Shape s;
+    private Rectangle2D bounds;
 
     public PlotSegment(String name, double innerRadius, double outerRadius, double centerx, double centery, double startAngle, double endAngle, Color fill, Color outline) {
         this.name = name;
@@ -57,6 +56,7 @@ public class PlotSegment implements IDrawable {
         this.startAngle = startAngle;
         this.endAngle = endAngle;
         s = createCurvedSegment(startAngle, endAngle, innerRadius, outerRadius, centerx, centery);
+        bounds = s.getBounds2D();
         this.fill = fill;
         this.outline = outline;
     }
@@ -93,7 +93,7 @@ public class PlotSegment implements IDrawable {
     @Override
     public void setFill(Paint color) {
         this.fill = color;
-        this.dirty = true;
+        damage(bounds);
     }
 
     @Override
@@ -104,7 +104,7 @@ public class PlotSegment implements IDrawable {
     @Override
     public void setOutline(Paint color) {
         this.outline = color;
-        this.dirty = true;
+        damage(bounds);
     }
 
     public Shape getShape() {
@@ -113,14 +113,18 @@ public class PlotSegment implements IDrawable {
 
     public void setCenterx(double centerx) {
         this.centerx = centerx;
+        damage(bounds);
         s = createCurvedSegment(startAngle, endAngle, innerRadius, outerRadius, centerx, centery);
-        this.dirty = true;
+        bounds = s.getBounds2D();
+        damage(bounds);
     }
 
     public void setCentery(double centery) {
         this.centery = centery;
+        damage(bounds);
         s = createCurvedSegment(startAngle, endAngle, innerRadius, outerRadius, centerx, centery);
-        this.dirty = true;
+        bounds = s.getBounds2D();
+        damage(bounds);
     }
 
     @Override
@@ -199,7 +203,7 @@ public class PlotSegment implements IDrawable {
 //		at.concatenate(AffineTransform.getRotateInstance((startAngle + (endAngle - startAngle) / 2) * Math.PI * 2.0d, ccenterx, ccentery));
         at.concatenate(AffineTransform.getTranslateInstance(-r.getCenterX(), -r.getCenterY()));
         AffineTransform ot = g2.getTransform();
-        g2.setTransform(at);
+        g2.transform(at);
 //		g2.draw(r);
 //		g2.drawString(name, (float) r.getMinX(), (float) (r.getMinY() + g2.getFontMetrics().getLineMetrics(name, g2).getDescent()));
         g2.setTransform(ot);
@@ -209,21 +213,14 @@ public class PlotSegment implements IDrawable {
 //		s = at.createTransformedShape(s);
 //		g2.fill(s);
         g2.setColor(current);
-        dirty = false;
     }
 //	public Point2D getPointClosestToReference(Point2D reference, Rectangle2D.Double r) {
 //		
 //	}
 
     @Override
-    public boolean isDirty() {
-        return dirty;
-    }
-
-    @Override
-    public Shape select(AffineTransform at, Point2D point) {
-        Shape transf = at.createTransformedShape(s);
-        if (transf.contains(point.getX(), point.getY())) {
+    public Shape select(Point2D point) {
+        if (bounds.contains(point) && s.contains(point)) {
             return this;
         }
         return null;
@@ -25,65 +25,109 @@ import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
-import java.awt.geom.Area;
-import java.awt.geom.GeneralPath;
+import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 
 /**
  * A ribbon connects two separate parts either within one Segment or between two
- * segments.
+ * segments. The geometry of a ribbon is a row of a {@link RibbonTable}, its
+ * outline and its connector are only built when they are needed.
  *
  * @author Nils Hoffmann
  */
-public class Ribbon implements IDrawable {
+public class Ribbon extends AbstractDrawable {
 
+    private final RibbonTable table;
+    private final int index;
     private Paint fill = Color.BLUE;
     private Paint outline = Color.DARK_GRAY;
-    private Shape s;
-    private Rectangle2D bounds;
-    private IDrawable sourceConnector;
-    private IDrawable targetConnector;
-    private Segment source;
-    private Segment target;
-    private boolean dirty;
-    private boolean selected;
 
     public Ribbon(double sourceRadius, double targetRadius, double centerx, double centery, double localStartAngle0, double localEndAngle0, double localStartAngle1, double localEndAngle1) {
-        s = createConnectionSegmentShape(sourceRadius, targetRadius, centerx, centery, localStartAngle0, localEndAngle0, localStartAngle1, localEndAngle1);
+        this(new RibbonTable(1, centerx, centery, sourceRadius, targetRadius), 0);
+        table.set(0, localStartAngle0, localEndAngle0, localStartAngle1, localEndAngle1, null, null);
     }
 
     public Ribbon(double sourceRadius, double targetRadius, double centerx, double centery, Segment source, Segment target, double sourceStartAngle, double sourceEndAngle, double targetStartAngle, double targetEndAngle) {
-        this.source = source;
-        this.target = target;
-        s = createConnectionSegmentShape(sourceRadius, targetRadius - 10, centerx, centery, sourceStartAngle, sourceEndAngle, targetStartAngle, targetEndAngle);
-        sourceConnector = new Segment("s", targetRadius - 10, targetRadius, centerx, centery, sourceStartAngle, sourceEndAngle, this.target.getFill(), this.target.getOutline());
-//        targetConnector = new Segment("t", sourceRadius, targetRadius-absRad, centerx, centery, targetStartAngle, targetEndAngle, this.source.getFill(), this.source.getOutline());
-        bounds = s.getBounds2D();
-        bounds.add(sourceConnector.getBounds2D());
-//        bounds.add(targetConnector.getBounds2D());
+        this(new RibbonTable(1, centerx, centery, sourceRadius, targetRadius - 10, targetRadius - 10, targetRadius), 0);
+        table.set(0, sourceStartAngle, sourceEndAngle, targetStartAngle, targetEndAngle, target.getFill(), target.getOutline());
     }
 
     public Ribbon(double sourceRadius, double targetRadius, double centerx, double centery, Segment source, Segment target) {
-        this.source = source;
-        this.target = target;
-        s = createConnectionSegmentShape(sourceRadius, targetRadius, centerx, centery, source.getStartAngle(), source.getEndAngle(), target.getStartAngle(), target.getEndAngle());
-        sourceConnector = new Segment("s", sourceRadius, targetRadius, centerx, centery, source.getStartAngle(), source.getEndAngle(), this.target.getFill(), this.target.getOutline());
-//        targetConnector = new Segment("t", sourceRadius+absRad, targetRadius-absRad, centerx, centery, target.getStartAngle(), target.getEndAngle(), this.source.getFill(), this.source.getOutline());
-        bounds = s.getBounds2D();
-        bounds.add(sourceConnector.getBounds2D());
-//        bounds.add(targetConnector.getBounds2D());
+        this(new RibbonTable(1, centerx, centery, sourceRadius, targetRadius, sourceRadius, targetRadius), 0);
+        table.set(0, source.getStartAngle(), source.getEndAngle(), target.getStartAngle(), target.getEndAngle(), target.getFill(), target.getOutline());
     }
 
+    /**
+     * Creates a ribbon for a row of a table. The row has to be set already.
+     *
+     * @param table the table
+     * @param index the row of the ribbon
+     */
+    public Ribbon(RibbonTable table, int index) {
+        this.table = table;
+        this.index = index;
+    }
+
+    public RibbonTable getTable() {
+        return table;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the connector at the source end, or null if the ribbon has
+     * none. The sector is created on each call, but builds no outline until
+     * it is drawn.
+     */
+    public AnnularSector getConnector() {
+        return table.getConnector(index);
+    }
+
+    /**
+     * @return a new segment for the connector at the source end, or null
+     * @deprecated allocates a segment with a stroked outline on each call,
+     * use {@link #getConnector()}
+     */
+    @Deprecated
+    public IDrawable getSourceConnector() {
+        return table.getConnectorSegment(index);
+    }
+
+    /**
+     * @return null, ribbons have no connector at the target end
+     * @deprecated ribbons have no connector at the target end
+     */
+    @Deprecated
+    public IDrawable getTargetConnector() {
+        return null;
+    }
+
+    /**
+     * The geometry of a ribbon is fixed when its table row is set, the
+     * segments are not kept.
+     *
+     * @throws UnsupportedOperationException always
+     * @deprecated create a new ribbon instead
+     */
+    @Deprecated
     public void setSourceSegment(Segment source) {
-        this.source = source;
-        this.dirty = true;
+        throw new UnsupportedOperationException("The geometry of a ribbon is fixed, create a new ribbon instead");
     }
 
+    /**
+     * The geometry of a ribbon is fixed when its table row is set, the
+     * segments are not kept.
+     *
+     * @throws UnsupportedOperationException always
+     * @deprecated create a new ribbon instead
+     */
+    @Deprecated
     public void setTargetSegment(Segment target) {
-        this.target = target;
-        this.dirty = true;
+        throw new UnsupportedOperationException("The geometry of a ribbon is fixed, create a new ribbon instead");
     }
 
     @Override
@@ -94,7 +138,7 @@ public class Ribbon implements IDrawable {
     @Override
     public void setFill(Paint color) {
         this.fill = color;
-        this.dirty = true;
+        damage(getBounds2D());
     }
 
     @Override
@@ -105,115 +149,109 @@ public class Ribbon implements IDrawable {
     @Override
     public void setOutline(Paint color) {
         this.outline = color;
-        this.dirty = true;
+        damage(getBounds2D());
     }
 
-    public static Shape createConnectionSegmentShape(double sourceRadius, double targetRadius, double centerx, double centery, double sourceStartAngle, double sourceEndAngle, double targetStartAngle, double targetEndAngle) {
-        GeneralPath gp = new GeneralPath();
+    /**
+     * Creates the outline of a ribbon as a single closed path: along the
+     * source arc, by a quadratic curve through the center to the target arc,
+     * along the target arc and back by a second quadratic curve.
+     */
+    public static Path2D.Float createConnectionSegmentShape(double sourceRadius, double targetRadius, double centerx, double centery, double sourceStartAngle, double sourceEndAngle, double targetStartAngle, double targetEndAngle) {
         Arc2D arc1 = new Arc2D.Double();
         arc1.setArcByCenter(centerx, centery, targetRadius, toDeg(sourceStartAngle), toDeg(sourceEndAngle) - toDeg(sourceStartAngle), Arc2D.OPEN);
         Arc2D arc2 = new Arc2D.Double();
         arc2.setArcByCenter(centerx, centery, sourceRadius, toDeg(targetStartAngle), toDeg(targetEndAngle) - toDeg(targetStartAngle), Arc2D.OPEN);
-        gp.moveTo(arc1.getEndPoint().getX(), arc1.getEndPoint().getY());
-        gp.quadTo(centerx, centery, arc2.getStartPoint().getX(), arc2.getStartPoint().getY());
-        gp.lineTo(arc2.getEndPoint().getX(), arc2.getEndPoint().getY());
-        gp.quadTo(centerx, centery, arc1.getStartPoint().getX(), arc1.getStartPoint().getY());
-        gp.lineTo(arc1.getEndPoint().getX(), arc1.getEndPoint().getY());
-        gp.append(arc1, false);
-        gp.append(arc2, false);
-        gp.closePath();
-        return new Area(gp);
+        Point2D arc2Start = arc2.getStartPoint();
+        Point2D arc1Start = arc1.getStartPoint();
+        Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, 16);
+        path.append(arc1, false);
+        path.quadTo(centerx, centery, arc2Start.getX(), arc2Start.getY());
+        path.append(arc2, true);
+        path.quadTo(centerx, centery, arc1Start.getX(), arc1Start.getY());
+        path.closePath();
+        return path;
     }
 
     @Override
     public Rectangle getBounds() {
-        return s.getBounds();
+        return getBounds2D().getBounds();
     }
 
     @Override
     public Rectangle2D getBounds2D() {
-        return s.getBounds2D();
+        //includes the connectors
+        return table.getBounds2D(index);
     }
 
     @Override
     public boolean contains(double x, double y) {
-        return s.contains(x, y);
+        return table.contains(index, x, y);
     }
 
     @Override
     public boolean contains(Point2D p) {
-        return s.contains(p);
+        return table.contains(index, p.getX(), p.getY());
     }
 
     @Override
     public boolean intersects(double x, double y, double w, double h) {
-        return s.intersects(x, y, w, h);
+        return table.getShape(index).intersects(x, y, w, h);
     }
 
     @Override
     public boolean intersects(Rectangle2D r) {
-        return s.intersects(r);
+        return table.getShape(index).intersects(r);
     }
 
     @Override
     public boolean contains(double x, double y, double w, double h) {
-        return s.contains(x, y, w, h);
+        return table.getShape(index).contains(x, y, w, h);
     }
 
     @Override
     public boolean contains(Rectangle2D r) {
-        return s.contains(r);
+        return table.getShape(index).contains(r);
     }
 
     @Override
     public PathIterator getPathIterator(AffineTransform at) {
-        return s.getPathIterator(at);
+        return table.getShape(index).getPathIterator(at);
     }
 
     @Override
     public PathIterator getPathIterator(AffineTransform at, double flatness) {
-        return s.getPathIterator(at, flatness);
+        return table.getShape(index).getPathIterator(at, flatness);
     }
 
     @Override
     public void draw(Graphics2D g2) {
         Color current = g2.getColor();
+        Shape s = table.getShape(index);
         g2.setPaint(fill);
         g2.fill(s);
         g2.setPaint(outline);
         g2.draw(s);
-        if (sourceConnector != null) {
-            sourceConnector.draw(g2);
-        }
-        if (targetConnector != null) {
-            targetConnector.draw(g2);
+        if (table.hasConnectors()) {
+            Shape connector = table.getConnector(index);
+            g2.setPaint(table.getConnectorFill(index));
+            g2.fill(connector);
+            g2.setPaint(table.getConnectorOutline(index));
+            g2.draw(connector);
         }
         g2.setColor(current);
-        dirty = false;
-    }
-
-    @Override
-    public boolean isDirty() {
-        return dirty;
     }
 
     @Override
-    public Shape select(AffineTransform at, Point2D point) {
-        Shape transf = at.createTransformedShape(s);
-        if (transf.contains(point.getX(), point.getY())) {
-            return this;
+    public Shape select(Point2D point) {
+        if (!table.boundsContain(index, point.getX(), point.getY())) {
+            return null;
         }
-        if (sourceConnector != null) {
-            transf = at.createTransformedShape(sourceConnector);
-            if (transf.contains(point.getX(), point.getY())) {
-                return this;
-            }
+        if (table.contains(index, point.getX(), point.getY())) {
+            return this;
         }
-        if (targetConnector != null) {
-            transf = at.createTransformedShape(targetConnector);
-            if (transf.contains(point.getX(), point.getY())) {
-                return this;
-            }
+        if (table.connectorContains(index, point.getX(), point.getY())) {
+            return this;
         }
         return null;
     }
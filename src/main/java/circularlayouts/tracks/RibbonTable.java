@@ -0,0 +1,450 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.tracks;
+
+import circularlayouts.layout.RatioLayoutBuilder;
+import java.awt.Paint;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The geometry of many ribbons of one layout in primitive arrays: the four
+ * angles of each ribbon, its bounds and the paints of its connector. Center
+ * and radii are shared by all ribbons of a table. Bounds are computed from
+ * the angles and point tests are decided from them, too. Outlines are only
+ * built when a ribbon is drawn or tested against a rectangle and are kept
+ * in a small cache of soft references, so memory does not grow with the
+ * detail of the ribbons.
+ *
+ * Rows are written once, e.g. in parallel by row blocks of the layout, and
+ * are read only after that.
+ *
+ * @author Nils Hoffmann
+ */
+public class RibbonTable {
+
+    /**
+     * Number of outlines kept by the cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+    //Arc2D approximates arcs by cubic curves, which bulge out by less than
+    //0.03% of the radius
+    private static final double ARC_TOLERANCE = 1.0003d;
+    private final double centerx;
+    private final double centery;
+    private final double sourceRadius;
+    private final double targetRadius;
+    private final double connectorInnerRadius;
+    private final double connectorOuterRadius;
+    private final int size;
+    //source start, source end, target start, target end per ribbon
+    private final float[] angles;
+    //x, y, width, height per ribbon, including the connector
+    private final float[] bounds;
+    //fill and outline of the connector per ribbon
+    private final Paint[] connectorPaints;
+    //direct mapped, a racing thread at worst builds an outline twice
+    private final AtomicReferenceArray<CacheEntry> cache;
+    //consecutive calls mostly ask for the same row
+    private volatile Outline last;
+    //a hit test asks many rows about the same point
+    private volatile PolarPoint lastPoint;
+
+    /**
+     * Creates a table of ribbons without connectors.
+     *
+     * @param size the number of ribbons
+     * @param centerx the x coordinate of the center
+     * @param centery the y coordinate of the center
+     * @param sourceRadius the radius of the target arc of a ribbon, see
+     * {@link Ribbon#createConnectionSegmentShape(double, double, double, double, double, double, double, double)}
+     * @param targetRadius the radius of the source arc of a ribbon
+     */
+    public RibbonTable(int size, double centerx, double centery, double sourceRadius, double targetRadius) {
+        this(size, centerx, centery, sourceRadius, targetRadius, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Creates a table of ribbons with a connector at the source end of each
+     * ribbon, a segment between the given radii over the source angles.
+     */
+    public RibbonTable(int size, double centerx, double centery, double sourceRadius, double targetRadius, double connectorInnerRadius, double connectorOuterRadius) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size must not be negative: " + size);
+        }
+        this.size = size;
+        this.centerx = centerx;
+        this.centery = centery;
+        this.sourceRadius = sourceRadius;
+        this.targetRadius = targetRadius;
+        this.connectorInnerRadius = connectorInnerRadius;
+        this.connectorOuterRadius = connectorOuterRadius;
+        this.angles = new float[4 * size];
+        this.bounds = new float[4 * size];
+        this.connectorPaints = hasConnectors() ? new Paint[2 * size] : null;
+        this.cache = new AtomicReferenceArray<CacheEntry>(Math.min(DEFAULT_CACHE_SIZE, Integer.highestOneBit(Math.max(1, size - 1)) << 1));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean hasConnectors() {
+        return !Double.isNaN(connectorInnerRadius);
+    }
+
+    /**
+     * Sets the angles of a ribbon, as fractions of a full turn, and the
+     * paints of its connector, if the table has connectors.
+     */
+    public void set(int index, double sourceStartAngle, double sourceEndAngle, double targetStartAngle, double targetEndAngle, Paint connectorFill, Paint connectorOutline) {
+        int a = 4 * index;
+        angles[a] = (float) sourceStartAngle;
+        angles[a + 1] = (float) sourceEndAngle;
+        angles[a + 2] = (float) targetStartAngle;
+        angles[a + 3] = (float) targetEndAngle;
+        //min x, min y, max x, max y
+        double[] b = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        double s0 = 2 * Math.PI * angles[a];
+        double s1 = 2 * Math.PI * angles[a + 1];
+        double t0 = 2 * Math.PI * angles[a + 2];
+        double t1 = 2 * Math.PI * angles[a + 3];
+        addArcBounds(b, targetRadius, s0, s1);
+        addArcBounds(b, sourceRadius, t0, t1);
+        addQuadBounds(b, centerx + targetRadius * Math.cos(s1), centery - targetRadius * Math.sin(s1),
+                centerx + sourceRadius * Math.cos(t0), centery - sourceRadius * Math.sin(t0));
+        addQuadBounds(b, centerx + sourceRadius * Math.cos(t1), centery - sourceRadius * Math.sin(t1),
+                centerx + targetRadius * Math.cos(s0), centery - targetRadius * Math.sin(s0));
+        if (hasConnectors()) {
+            connectorPaints[2 * index] = connectorFill;
+            connectorPaints[2 * index + 1] = connectorOutline;
+            addArcBounds(b, connectorInnerRadius, s0, s1);
+            addArcBounds(b, connectorOuterRadius, s0, s1);
+        }
+        bounds[a] = (float) b[0];
+        bounds[a + 1] = (float) b[1];
+        bounds[a + 2] = (float) (b[2] - b[0]);
+        bounds[a + 3] = (float) (b[3] - b[1]);
+    }
+
+    /**
+     * Adds the end points of an arc around the center and the points where
+     * it crosses the axes to the bounds, angles in radians.
+     */
+    private void addArcBounds(double[] b, double radius, double from, double to) {
+        addPoint(b, centerx + radius * Math.cos(from), centery - radius * Math.sin(from));
+        addPoint(b, centerx + radius * Math.cos(to), centery - radius * Math.sin(to));
+        double r = radius * ARC_TOLERANCE;
+        double quarter = Math.PI / 2;
+        double first = Math.ceil(Math.min(from, to) / quarter);
+        double end = Math.max(from, to) / quarter;
+        //a full turn passes all four
+        for (double q = first; q <= end && q < first + 4; q++) {
+            switch ((int) (q - 4 * Math.floor(q / 4))) {
+                case 0:
+                    addPoint(b, centerx + r, centery);
+                    break;
+                case 1:
+                    addPoint(b, centerx, centery - r);
+                    break;
+                case 2:
+                    addPoint(b, centerx - r, centery);
+                    break;
+                default:
+                    addPoint(b, centerx, centery + r);
+            }
+        }
+    }
+
+    /**
+     * Adds the quadratic curve through the center to the bounds, its end
+     * points and its extreme points in x and y.
+     */
+    private void addQuadBounds(double[] b, double x0, double y0, double x2, double y2) {
+        addPoint(b, x0, y0);
+        addPoint(b, x2, y2);
+        double tx = (x0 - centerx) / (x0 - 2 * centerx + x2);
+        double ty = (y0 - centery) / (y0 - 2 * centery + y2);
+        //NaN and infinite parameters fail both tests
+        if (tx > 0 && tx < 1) {
+            double u = 1 - tx;
+            addPoint(b, u * u * x0 + 2 * tx * u * centerx + tx * tx * x2, y0);
+        }
+        if (ty > 0 && ty < 1) {
+            double u = 1 - ty;
+            addPoint(b, x0, u * u * y0 + 2 * ty * u * centery + ty * ty * y2);
+        }
+    }
+
+    private static void addPoint(double[] b, double x, double y) {
+        b[0] = Math.min(b[0], x);
+        b[1] = Math.min(b[1], y);
+        b[2] = Math.max(b[2], x);
+        b[3] = Math.max(b[3], y);
+    }
+
+    public double getSourceStartAngle(int index) {
+        return angles[4 * index];
+    }
+
+    public double getSourceEndAngle(int index) {
+        return angles[4 * index + 1];
+    }
+
+    public double getTargetStartAngle(int index) {
+        return angles[4 * index + 2];
+    }
+
+    public double getTargetEndAngle(int index) {
+        return angles[4 * index + 3];
+    }
+
+    /**
+     * @return the bounds of the ribbon including its connector
+     */
+    public Rectangle2D getBounds2D(int index) {
+        int a = 4 * index;
+        return new Rectangle2D.Float(bounds[a], bounds[a + 1], bounds[a + 2], bounds[a + 3]);
+    }
+
+    /**
+     * @return true, if the point is inside the bounds of the ribbon
+     */
+    public boolean boundsContain(int index, double x, double y) {
+        int a = 4 * index;
+        double x0 = bounds[a];
+        double y0 = bounds[a + 1];
+        return x >= x0 && y >= y0 && x < x0 + bounds[a + 2] && y < y0 + bounds[a + 3];
+    }
+
+    /**
+     * Decides whether a point is inside a ribbon from its parameters, by the
+     * winding number of the two arcs and the two quadratic curves of its
+     * outline. The ray runs outwards from the center through the point, it
+     * crosses an arc where the arc covers the angle of the point and crosses
+     * a curve through the center only where the end points of the curve lie
+     * on different sides. The outline is not built.
+     *
+     * @return true, if the point is inside the ribbon, without its connector
+     */
+    public boolean contains(int index, double x, double y) {
+        if (!boundsContain(index, x, y)) {
+            return false;
+        }
+        PolarPoint p = toPolar(x, y);
+        double radius = p.radius;
+        double angle = p.angle;
+        int a = 4 * index;
+        //from the end of one arc through the center to the start of the other
+        int winding = arcCrossing(targetRadius, angles[a], angles[a + 1], radius, angle)
+                + quadCrossing(targetRadius, angles[a + 1], sourceRadius, angles[a + 2], radius, angle)
+                + arcCrossing(sourceRadius, angles[a + 2], angles[a + 3], radius, angle)
+                + quadCrossing(sourceRadius, angles[a + 3], targetRadius, angles[a], radius, angle);
+        return winding != 0;
+    }
+
+    /**
+     * Decides whether a point is inside the connector of a ribbon, without
+     * building it.
+     *
+     * @return true, if the point is inside the connector, false if it is not
+     * or the table has no connectors
+     */
+    public boolean connectorContains(int index, double x, double y) {
+        if (!hasConnectors() || !boundsContain(index, x, y)) {
+            return false;
+        }
+        PolarPoint p = toPolar(x, y);
+        if (p.radius < Math.min(connectorInnerRadius, connectorOuterRadius) || p.radius > Math.max(connectorInnerRadius, connectorOuterRadius)) {
+            return false;
+        }
+        //as AnnularSector decides it
+        double from = angles[4 * index];
+        double extent = angles[4 * index + 1] - from;
+        if (Math.abs(extent) >= 1.0d) {
+            return true;
+        }
+        double d = p.angle - (extent < 0 ? from + extent : from);
+        d -= Math.floor(d);
+        return d <= Math.abs(extent);
+    }
+
+    private PolarPoint toPolar(double x, double y) {
+        PolarPoint p = lastPoint;
+        if (p == null || p.x != x || p.y != y) {
+            double dx = x - centerx;
+            double dy = centery - y;
+            p = new PolarPoint(x, y, Math.sqrt(dx * dx + dy * dy), Math.atan2(dy, dx) / (2 * Math.PI));
+            lastPoint = p;
+        }
+        return p;
+    }
+
+    /**
+     * @return the signed crossing of the ray at the given radius and angle
+     * with the arc around the center, angles as fractions of a turn and
+     * counter-clockwise on screen
+     */
+    private static int arcCrossing(double arcRadius, double from, double to, double radius, double angle) {
+        if (radius >= arcRadius) {
+            return 0;
+        }
+        double extent = to - from;
+        double d = extent < 0 ? from - angle : angle - from;
+        d -= Math.floor(d);
+        if (d >= Math.abs(extent)) {
+            return 0;
+        }
+        return extent < 0 ? -1 : 1;
+    }
+
+    /**
+     * @return the signed crossing of the ray at the given radius and angle
+     * with the quadratic curve through the center, from the first to the
+     * second point given in polar coordinates
+     */
+    private static int quadCrossing(double r0, double angle0, double r2, double angle2, double radius, double angle) {
+        double d0 = angle0 - angle;
+        d0 -= Math.floor(d0);
+        double d2 = angle2 - angle;
+        d2 -= Math.floor(d2);
+        if ((d0 < 0.5d) == (d2 < 0.5d)) {
+            return 0;
+        }
+        //distances of the end points from the line of the ray
+        double n0 = r0 * Math.sin(2 * Math.PI * d0);
+        double n2 = r2 * Math.sin(2 * Math.PI * d2);
+        if (n0 * n2 >= 0) {
+            return 0;
+        }
+        //relative to the center the curve is u^2 p0 + t^2 p2, it meets the
+        //line where u^2 n0 + t^2 n2 = 0
+        double t = 1.0d / (1.0d + Math.sqrt(-n2 / n0));
+        double u = 1.0d - t;
+        if (u * u * r0 * Math.cos(2 * Math.PI * d0) + t * t * r2 * Math.cos(2 * Math.PI * d2) <= radius) {
+            return 0;
+        }
+        return n2 > 0 ? 1 : -1;
+    }
+
+    /**
+     * @return the outline of the ribbon, from the cache or built again. The
+     * outline is shared and must not be modified.
+     */
+    public Path2D.Float getShape(int index) {
+        Path2D.Float shape = getHeldShape(index);
+        if (shape == null) {
+            shape = createShape(index);
+            cache.set(index & (cache.length() - 1), new CacheEntry(index, shape));
+            last = new Outline(index, shape);
+        }
+        return shape;
+    }
+
+    /**
+     * @return the outline used last or a cached outline of the ribbon, or
+     * null if it is not held anymore
+     */
+    private Path2D.Float getHeldShape(int index) {
+        Outline o = last;
+        if (o != null && o.index == index) {
+            return o.shape;
+        }
+        CacheEntry e = cache.get(index & (cache.length() - 1));
+        if (e != null && e.index == index) {
+            Path2D.Float shape = e.get();
+            if (shape != null) {
+                last = new Outline(index, shape);
+                return shape;
+            }
+        }
+        return null;
+    }
+
+    private Path2D.Float createShape(int index) {
+        int a = 4 * index;
+        return Ribbon.createConnectionSegmentShape(sourceRadius, targetRadius, centerx, centery, angles[a], angles[a + 1], angles[a + 2], angles[a + 3]);
+    }
+
+    /**
+     * @return a new shape of the connector of the ribbon, or null if the
+     * table has no connectors
+     */
+    public AnnularSector getConnector(int index) {
+        if (!hasConnectors()) {
+            return null;
+        }
+        return RatioLayoutBuilder.createCurvedSegment(angles[4 * index], angles[4 * index + 1], connectorInnerRadius, connectorOuterRadius, centerx, centery);
+    }
+
+    /**
+     * @return a new segment for the connector of the ribbon, or null if the
+     * table has no connectors
+     */
+    public Segment getConnectorSegment(int index) {
+        if (!hasConnectors()) {
+            return null;
+        }
+        return new Segment("s", connectorInnerRadius, connectorOuterRadius, centerx, centery, angles[4 * index], angles[4 * index + 1], getConnectorFill(index), getConnectorOutline(index));
+    }
+
+    public Paint getConnectorFill(int index) {
+        return connectorPaints == null ? null : connectorPaints[2 * index];
+    }
+
+    public Paint getConnectorOutline(int index) {
+        return connectorPaints == null ? null : connectorPaints[2 * index + 1];
+    }
+
+    private static final class Outline {
+
+        private final int index;
+        private final Path2D.Float shape;
+
+        Outline(int index, Path2D.Float shape) {
+            this.index = index;
+            this.shape = shape;
+        }
+    }
+
+    private static final class PolarPoint {
+
+        private final double x;
+        private final double y;
+        private final double radius;
+        //as a fraction of a turn
+        private final double angle;
+
+        PolarPoint(double x, double y, double radius, double angle) {
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.angle = angle;
+        }
+    }
+
+    private static final class CacheEntry extends SoftReference<Path2D.Float> {
+
+        private final int index;
+
+        CacheEntry(int index, Path2D.Float shape) {
+            super(shape);
+            this.index = index;
+        }
+    }
+}
@@ -15,16 +15,17 @@
  */
 package circularlayouts.tracks;
 
-import circularlayouts.IDrawable;
 import circularlayouts.PolarCoordinates;
 import static circularlayouts.layout.RatioLayoutBuilder.createCurvedSegment;
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.Paint;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.font.FontRenderContext;
 import java.awt.geom.Arc2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.PathIterator;
@@ -35,7 +36,10 @@ import java.awt.geom.Rectangle2D;
  *
  * @author Nils Hoffmann
  */
-public class Ticks implements IDrawable {
+public class Ticks extends AbstractDrawable {
+
+    private static final Font LABEL_FONT = new Font(Font.DIALOG, Font.PLAIN, 12);
+    private static final FontRenderContext LABEL_FONT_CONTEXT = new FontRenderContext(null, false, false);
 
     private Paint fill = Color.BLUE;
     private Paint outline = Color.DARK_GRAY;
@@ -46,9 +50,10 @@ public class Ticks implements IDrawable {
     private final double startAngle;
     private final double endAngle;
     private double increment;
-    private boolean dirty = false;
     private String name = "";
     private Shape s;
+    private Rectangle2D bounds;
+    private Rectangle2D labelBounds;
     private boolean selected;
 
     public Ticks(String name, double innerRadius, double outerRadius, double centerx, double centery, double startAngle, double endAngle, Color fill, Color outline) {
@@ -60,6 +65,8 @@ public class Ticks implements IDrawable {
         this.startAngle = startAngle;
         this.endAngle = endAngle;
         s = createCurvedSegment(startAngle, endAngle, innerRadius, outerRadius, centerx, centery);
+        bounds = s.getBounds2D();
+        labelBounds = createLabelBounds();
         this.fill = fill;
         this.outline = outline;
     }
@@ -96,7 +103,7 @@ public class Ticks implements IDrawable {
     @Override
     public void setFill(Paint color) {
         this.fill = color;
-        this.dirty = true;
+        damage(getBounds2D());
     }
 
     @Override
@@ -107,7 +114,7 @@ public class Ticks implements IDrawable {
     @Override
     public void setOutline(Paint color) {
         this.outline = color;
-        this.dirty = true;
+        damage(getBounds2D());
     }
 
     public Shape getShape() {
@@ -116,24 +123,35 @@ public class Ticks implements IDrawable {
 
     public void setCenterx(double centerx) {
         this.centerx = centerx;
+        damage(getBounds2D());
         s = createCurvedSegment(startAngle, endAngle, innerRadius, outerRadius, centerx, centery);
-        this.dirty = true;
+        bounds = s.getBounds2D();
+        labelBounds = createLabelBounds();
+        damage(getBounds2D());
     }
 
     public void setCentery(double centery) {
         this.centery = centery;
+        damage(getBounds2D());
         s = createCurvedSegment(startAngle, endAngle, innerRadius, outerRadius, centerx, centery);
-        this.dirty = true;
+        bounds = s.getBounds2D();
+        labelBounds = createLabelBounds();
+        damage(getBounds2D());
     }
 
     @Override
     public Rectangle getBounds() {
-        return s.getBounds();
+        return getBounds2D().getBounds();
     }
 
+    /**
+     * @return the bounds of the shape, including the label
+     */
     @Override
     public Rectangle2D getBounds2D() {
-        return s.getBounds2D();
+        Rectangle2D r = s.getBounds2D();
+        r.add(labelBounds);
+        return r;
     }
 
     @Override
@@ -206,7 +224,17 @@ public class Ticks implements IDrawable {
         }
         g2.setPaint(outline);
         g2.setPaint(Color.BLACK);
-        double cwidth = g2.getFontMetrics().stringWidth(name);
+        g2.fill(labelBounds);
+        g2.setPaint(current);
+    }
+
+    /**
+     * Places the label box outside of the middle of the ticks. Its width is
+     * taken from the metrics of the label font, so that the bounds are known
+     * before the ticks are drawn.
+     */
+    private Rectangle2D createLabelBounds() {
+        double cwidth = LABEL_FONT.getStringBounds(name, LABEL_FONT_CONTEXT).getWidth();
         double cheight = 10.0d;
         double ccenterx = PolarCoordinates.toCoordX(
                 outerRadius + ((outerRadius - innerRadius) / 2) + cwidth,
@@ -216,29 +244,14 @@ public class Ticks implements IDrawable {
                 outerRadius + ((outerRadius - innerRadius) / 2) + cheight,
                 (startAngle + (endAngle - startAngle) / 2) * Math.PI * 2.0d,
                 centery);
-        Rectangle2D.Double r = new Rectangle2D.Double(
-                ccenterx,
-                ccentery, 1.0d, 1.0d);
+        Rectangle2D.Double r = new Rectangle2D.Double();
         r.setFrameFromCenter(ccenterx, ccentery, ccenterx + cwidth, ccentery + cheight);
-        AffineTransform at = AffineTransform.getTranslateInstance(r.getCenterX(), r.getCenterY());
-        at.concatenate(AffineTransform.getTranslateInstance(-r.getCenterX(), -r.getCenterY()));
-        AffineTransform ot = g2.getTransform();
-        g2.setTransform(at);
-        g2.fill(r);
-        g2.setTransform(ot);
-        g2.setPaint(current);
-        dirty = false;
-    }
-
-    @Override
-    public boolean isDirty() {
-        return dirty;
+        return r;
     }
 
     @Override
-    public Shape select(AffineTransform at, Point2D point) {
-        Shape transf = at.createTransformedShape(s);
-        if (transf.contains(point.getX(), point.getY())) {
+    public Shape select(Point2D point) {
+        if (bounds.contains(point) && s.contains(point)) {
             return this;
         }
         return null;
@@ -16,6 +16,7 @@
 package circularlayouts.tracks;
 
 import circularlayouts.IDrawable;
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Paint;
@@ -27,25 +28,42 @@ import java.awt.geom.Ellipse2D;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * A track is a container for drawable objects that logically belong to one
- * layer / level of the plot.
+ * layer / level of the plot. The track listens to the damage of its children,
+ * so it knows whether it is dirty without asking every child, and passes the
+ * damage on to its own damage listener.
  *
  * @author Nils Hoffmann
  * @param <T> a track for a specific sub type of {@link IDrawable}
  */
-public class Track<T extends IDrawable> implements IDrawable {
+public class Track<T extends IDrawable> extends AbstractDrawable implements DamageListener {
 
     private final List<T> drawables;
     private final Shape shape;
     private Paint fill;
     private Paint outline;
+    //children that do not report their damage, they are asked on every check
+    private final List<T> unreported = new ArrayList<T>();
 
     public Track(Point2D.Double center, double innerRadius, double outerRadius, List<T> drawables) {
         this.drawables = drawables;
         this.shape = createShape(center, innerRadius, outerRadius);
+        //the background has not been painted yet
+        damage(getBounds2D());
+        for (T t : drawables) {
+            if (t instanceof AbstractDrawable) {
+                ((AbstractDrawable) t).setDamageListener(this);
+                if (t.isDirty()) {
+                    addDamage(t.getDamage());
+                }
+            } else {
+                unreported.add(t);
+            }
+        }
     }
 
     public List<T> getChildren() {
@@ -63,19 +81,45 @@ public class Track<T extends IDrawable> implements IDrawable {
     @Override
     public void draw(Graphics2D g2) {
 //        System.out.println("Repainting track");
+        drawBackground(g2);
+
+        Rectangle2D clip = g2.getClipBounds();
+        if (clip == null) {
+            for (T t : drawables) {
+                t.draw(g2);
+            }
+        } else {
+            //only children that can reach into the clip are painted
+            if (g2.getStroke() instanceof BasicStroke) {
+                double pad = ((BasicStroke) g2.getStroke()).getLineWidth() / 2.0d + 1.0d;
+                clip.setRect(clip.getX() - pad, clip.getY() - pad, clip.getWidth() + 2 * pad, clip.getHeight() + 2 * pad);
+            }
+            for (T t : drawables) {
+                if (t.getBounds2D().intersects(clip)) {
+                    t.draw(g2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Paints the area of the track itself, without its children. Renderers
+     * that cull the children themselves call this instead of
+     * {@link #draw(java.awt.Graphics2D)}.
+     *
+     * @param g2 the graphics
+     */
+    public void drawBackground(Graphics2D g2) {
         g2.setPaint(fill);
         g2.fill(this);
         g2.setPaint(outline);
         g2.fill(this);
-
-        for (T t : drawables) {
-            t.draw(g2);
-        }
     }
 
     @Override
     public void setFill(Paint paint) {
         this.fill = paint;
+        damage(getBounds2D());
     }
 
     @Override
@@ -86,6 +130,7 @@ public class Track<T extends IDrawable> implements IDrawable {
     @Override
     public void setOutline(Paint color) {
         this.outline = color;
+        damage(getBounds2D());
     }
 
     @Override
@@ -143,20 +188,80 @@ public class Track<T extends IDrawable> implements IDrawable {
         return shape.getPathIterator(at, flatness);
     }
 
+    /**
+     * @return true, if the track itself or any of its children changed since
+     * the track was last drawn
+     */
     @Override
     public boolean isDirty() {
-//		for(IDrawable d:this) {
-//			if(d.isDirty()) {
-//				return true;
-//			}
-//		}
+        if (super.isDirty()) {
+            return true;
+        }
+        for (T t : unreported) {
+            if (t.isDirty()) {
+                return true;
+            }
+        }
         return false;
     }
 
+    /**
+     * @return the union of the damage of the dirty children, including the
+     * whole track area if the track itself changed
+     */
+    @Override
+    public Rectangle2D getDamage() {
+        //includes the damage the children reported
+        Rectangle2D damage = super.getDamage();
+        for (T t : unreported) {
+            if (t.isDirty()) {
+                Rectangle2D d = t.getDamage();
+                if (d == null) {
+                    continue;
+                }
+                if (damage == null) {
+                    damage = d;
+                } else {
+                    damage.add(d);
+                }
+            }
+        }
+        return damage;
+    }
+
+    /**
+     * Marks the track and all of its children as painted. Damage that a child
+     * reported after the last check of the track is kept by the track.
+     */
+    @Override
+    public void clearDamage() {
+        super.clearDamage();
+        for (T t : drawables) {
+            if (t instanceof AbstractDrawable) {
+                ((AbstractDrawable) t).resetDamage();
+            } else {
+                t.clearDamage();
+            }
+        }
+    }
+
+    /**
+     * Adds the damage of a child to the damage of the track and passes it on
+     * to the listener of the track.
+     */
+    @Override
+    public void damaged(IDrawable source, Rectangle2D region) {
+        addDamage(region);
+        DamageListener listener = getDamageListener();
+        if (listener != null) {
+            listener.damaged(source, region);
+        }
+    }
+
     @Override
-    public Shape select(AffineTransform at, Point2D point) {
+    public Shape select(Point2D point) {
         for (IDrawable d : drawables) {
-            Shape s = d.select(at, point);
+            Shape s = d.select(point);
             if (s != null) {
                 return s;
             }
@@ -0,0 +1,137 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.layout;
+
+import circularlayouts.IDrawable;
+import circularlayouts.tracks.Ribbon;
+import circularlayouts.tracks.RibbonTable;
+import circularlayouts.tracks.Track;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the parallel layout of {@link RatioLayoutBuilder} creates the
+ * same ribbons in the same order as the serial layout, for dense and sparse
+ * matrices. Small row blocks make the fork/join pool split every pass into
+ * many tasks.
+ *
+ * @author Nils Hoffmann
+ */
+public class ParallelLayoutTest {
+
+    private static final long SEED = 891236l;
+    private static final int[] SIZES = {1, 16, 64, 256};
+    private static final double[] DENSITIES = {0.1, 0.5, 1.0};
+    private static final int[] ROW_BLOCK_SIZES = {1, 3, 64};
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void createPool() {
+        pool = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @AfterClass
+    public static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testDenseMatrix() {
+        for (int size : SIZES) {
+            for (double density : DENSITIES) {
+                checkLayouts("dense, size " + size + ", density " + density, new DenseMatrix(createData(size, density)));
+            }
+        }
+    }
+
+    @Test
+    public void testSparseMatrix() {
+        for (int size : SIZES) {
+            for (double density : DENSITIES) {
+                checkLayouts("sparse, size " + size + ", density " + density, createSparseMatrix(createData(size, density)));
+            }
+        }
+    }
+
+    /**
+     * Cells that are not filled hold NaN, which the layout treats as "no
+     * link".
+     */
+    private static double[][] createData(int size, double density) {
+        Random rg = new Random(SEED);
+        double[][] data = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                data[i][j] = rg.nextDouble() < density ? 5000000 * rg.nextDouble() : Double.NaN;
+            }
+        }
+        return data;
+    }
+
+    private static SparseMatrix createSparseMatrix(double[][] data) {
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(data.length, data.length);
+        for (int i = 0; i < data.length; i++) {
+            for (int j = 0; j < data[i].length; j++) {
+                if (!Double.isNaN(data[i][j])) {
+                    builder.add(i, j, data[i][j]);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private static void checkLayouts(String name, Matrix matrix) {
+        List<Ribbon> serial = createRibbons(matrix, null, 1);
+        for (int rowBlockSize : ROW_BLOCK_SIZES) {
+            compare(name + ", row block size " + rowBlockSize, serial, createRibbons(matrix, pool, rowBlockSize));
+        }
+    }
+
+    private static List<Ribbon> createRibbons(Matrix matrix, ForkJoinPool pool, int rowBlockSize) {
+        RatioLayoutBuilder builder = new RatioLayoutBuilder(matrix);
+        builder.setForkJoinPool(pool);
+        builder.setRowBlockSize(rowBlockSize);
+        Map<String, Track<? extends IDrawable>> shapes = new LinkedHashMap<String, Track<? extends IDrawable>>();
+        builder.addTracks(new LayoutParameters(), shapes);
+        @SuppressWarnings("unchecked")
+        Track<Ribbon> ribbons = (Track<Ribbon>) shapes.get("Track 2");
+        return ribbons.getChildren();
+    }
+
+    private static void compare(String name, List<Ribbon> expected, List<Ribbon> actual) {
+        assertEquals(name + ": ribbons", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            RibbonTable e = expected.get(i).getTable();
+            int ei = expected.get(i).getIndex();
+            RibbonTable a = actual.get(i).getTable();
+            int ai = actual.get(i).getIndex();
+            String ribbon = name + ": ribbon " + i;
+            assertEquals(ribbon + " row", ei, ai);
+            assertEquals(ribbon + " source start", e.getSourceStartAngle(ei), a.getSourceStartAngle(ai), 0.0d);
+            assertEquals(ribbon + " source end", e.getSourceEndAngle(ei), a.getSourceEndAngle(ai), 0.0d);
+            assertEquals(ribbon + " target start", e.getTargetStartAngle(ei), a.getTargetStartAngle(ai), 0.0d);
+            assertEquals(ribbon + " target end", e.getTargetEndAngle(ei), a.getTargetEndAngle(ai), 0.0d);
+            assertEquals(ribbon + " bounds", e.getBounds2D(ei), a.getBounds2D(ai));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.layout;
+
+import circularlayouts.tracks.Segment;
+import java.awt.Color;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link Ranking} and the row and column ranking of
+ * {@link RatioLayoutBuilder} built on it.
+ *
+ * @author Nils Hoffmann
+ */
+public class RankingTest {
+
+    private static final double NaN = Double.NaN;
+
+    private static int[] getIds(Ranking ranking) {
+        int[] ids = new int[ranking.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = ranking.getId(i);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testDescendingOrder() {
+        Ranking ranking = new Ranking(1);
+        double[] values = {3.0d, 1.0d, 4.0d, 1.5d, 9.0d, 2.6d};
+        for (int i = 0; i < values.length; i++) {
+            ranking.add(i, values[i]);
+        }
+        ranking.sort();
+        assertArrayEquals(new int[]{4, 2, 0, 5, 3, 1}, getIds(ranking));
+        for (int i = 1; i < ranking.size(); i++) {
+            assertTrue(ranking.getValue(i - 1) >= ranking.getValue(i));
+        }
+    }
+
+    @Test
+    public void testTiesKeepInsertionOrder() {
+        //long enough for the merge sort above the insertion sort threshold
+        Ranking ranking = new Ranking();
+        int n = 100;
+        for (int i = 0; i < n; i++) {
+            ranking.add(i, i % 3);
+        }
+        ranking.sort();
+        int rank = 0;
+        for (int value = 2; value >= 0; value--) {
+            for (int i = value; i < n; i += 3) {
+                assertEquals(i, ranking.getId(rank));
+                assertEquals(value, ranking.getValue(rank), 0.0d);
+                rank++;
+            }
+        }
+    }
+
+    @Test
+    public void testReuseAfterClear() {
+        Ranking ranking = new Ranking();
+        ranking.add(0, 1.0d);
+        ranking.add(1, 2.0d);
+        ranking.sort();
+        ranking.clear();
+        assertEquals(0, ranking.size());
+        ranking.sort();
+        assertEquals(0, ranking.size());
+        ranking.add(7, 5.0d);
+        ranking.sort();
+        assertArrayEquals(new int[]{7}, getIds(ranking));
+    }
+
+    @Test
+    public void testNaNAndEmptyRows() {
+        double[][] data = {
+            {NaN, 2.0d, NaN, 2.0d},
+            {NaN, NaN, NaN, NaN},
+            {5.0d, 1.0d, 7.0d, NaN},
+            {1.0d, NaN, 7.0d, 3.0d}};
+        RatioLayoutBuilder builder = new RatioLayoutBuilder(data);
+        assertArrayEquals(new int[]{1, 3}, builder.getRibbonSourceOrder(0));
+        assertArrayEquals(new int[0], builder.getRibbonSourceOrder(1));
+        assertArrayEquals(new int[]{2, 0, 1}, builder.getRibbonSourceOrder(2));
+        //column 2, the tie keeps ascending row order
+        assertArrayEquals(new int[]{2, 3}, builder.getRibbonTargetOrder(2));
+        assertArrayEquals(new int[]{3, 0}, builder.getRibbonTargetOrder(3));
+        assertEquals(-1, builder.getRibbonSourceRank(1, 0));
+        assertEquals(1, builder.getRibbonSourceRank(0, 3));
+        assertEquals(1, builder.getRibbonTargetRank(0, 3));
+        //the same through a sparse matrix
+        RatioLayoutBuilder sparse = new RatioLayoutBuilder(SparseMatrix.fromDense(data));
+        for (int i = 0; i < data.length; i++) {
+            assertArrayEquals(builder.getRibbonSourceOrder(i), sparse.getRibbonSourceOrder(i));
+            assertArrayEquals(builder.getRibbonTargetOrder(i), sparse.getRibbonTargetOrder(i));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedMethods() {
+        double[][] data = {
+            {1.0d, 4.0d, NaN},
+            {2.0d, 2.0d, 6.0d},
+            {NaN, 3.0d, 1.0d}};
+        RatioLayoutBuilder builder = new RatioLayoutBuilder(data);
+        Segment segment = new Segment("s", 1.0d, 2.0d, 0.0d, 0.0d, 10.0d, 50.0d, Color.BLACK, Color.BLACK);
+        DenseMatrix matrix = new DenseMatrix(data);
+        double[] start = new double[matrix.getEntryCount()];
+        double[] end = new double[matrix.getEntryCount()];
+        for (int i = 0; i < data.length; i++) {
+            builder.getRibbonSourceAngles(segment, i, start, end);
+            double[] offsets = builder.getRibbonSourceAngles(segment, data, i);
+            for (int j = 0; j < data.length; j++) {
+                int entry = matrix.getEntry(i, j);
+                assertEquals(entry < 0 ? NaN : start[entry], offsets[j], 1e-12);
+            }
+            assertEquals(20.0d, offsets[data.length], 0.0d);
+            builder.getRibbonTargetAngles(segment, i, start, end);
+            offsets = builder.getRibbonTargetAngles(segment, data, i);
+            for (int j = 0; j < data.length; j++) {
+                int entry = matrix.getEntry(j, i);
+                assertEquals(entry < 0 ? NaN : start[entry], offsets[j], 1e-12);
+            }
+            assertEquals(40.0d, offsets[data.length], 0.0d);
+        }
+        //value to index in rank order, ties map to the last link
+        Map<Double, Integer> sourceMap = builder.getRibbonSourceRankMap(data, 1);
+        assertArrayEquals(new Double[]{6.0d, 2.0d}, sourceMap.keySet().toArray(new Double[0]));
+        assertEquals(Integer.valueOf(1), sourceMap.get(2.0d));
+        assertEquals(2, builder.getRibbonSourceRank(sourceMap, data, 1, 2));
+        assertEquals(1, builder.getRibbonSourceRank(sourceMap, data, 1, 0));
+        Map<Double, Integer> targetMap = builder.getRibbonTargetRankMap(data, 0);
+        assertArrayEquals(new Double[]{2.0d, 1.0d}, targetMap.keySet().toArray(new Double[0]));
+        assertEquals(1, builder.getRibbonTargetRank(targetMap, data, 0, 1));
+        assertEquals(-1, builder.getRibbonTargetRank(targetMap, data, 0, 2));
+        assertEquals(builder.getRibbonSourceRatio(1, 2), builder.getRibbonSourceRatio(data, 1, 2), 0.0d);
+        assertEquals(builder.getRibbonTargetRatio(2, 1), builder.getRibbonTargetRatio(data, 2, 1), 0.0d);
+    }
+}
@@ -0,0 +1,208 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.layout;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link SparseMatrix} with a {@link DenseMatrix} of the same
+ * values, through every accessor of {@link Matrix} and through the
+ * {@link Matrix} overloads in {@link Utils}.
+ *
+ * @author Nils Hoffmann
+ */
+public class SparseMatrixTest {
+
+    private static final long SEED = 891236l;
+
+    /**
+     * Random values, NaN with the given probability. The second row is
+     * empty, to cover rows without entries.
+     */
+    private static double[][] createData(int rows, int columns, double density) {
+        Random rg = new Random(SEED);
+        double[][] data = new double[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                data[i][j] = i != 1 && rg.nextDouble() < density ? 1000 * rg.nextDouble() : Double.NaN;
+            }
+        }
+        return data;
+    }
+
+    @Test
+    public void testAccessorsMatchDense() {
+        double[][] data = createData(7, 11, 0.4);
+        checkMatrix(new DenseMatrix(data), SparseMatrix.fromDense(data));
+    }
+
+    @Test
+    public void testFullMatrix() {
+        double[][] data = createData(5, 5, 1.0);
+        checkMatrix(new DenseMatrix(data), SparseMatrix.fromDense(data));
+    }
+
+    @Test
+    public void testEmptyMatrix() {
+        double[][] data = createData(4, 3, 0.0);
+        SparseMatrix sparse = SparseMatrix.fromDense(data);
+        assertEquals(0, sparse.getEntryCount());
+        checkMatrix(new DenseMatrix(data), sparse);
+        SparseMatrix none = SparseMatrix.fromDense(new double[0][0]);
+        assertEquals(0, none.getRows());
+        assertEquals(0, none.getColumns());
+        assertEquals(0, none.getEntryCount());
+    }
+
+    private static void checkMatrix(DenseMatrix dense, SparseMatrix sparse) {
+        double[][] data = dense.getData();
+        assertEquals(dense.getRows(), sparse.getRows());
+        assertEquals(dense.getColumns(), sparse.getColumns());
+        int links = 0;
+        for (int i = 0; i < dense.getRows(); i++) {
+            for (int j = 0; j < dense.getColumns(); j++) {
+                assertEquals(dense.get(i, j), sparse.get(i, j), 0.0d);
+                int entry = sparse.getEntry(i, j);
+                assertEquals(dense.getEntry(i, j) < 0, entry < 0);
+                if (entry >= 0) {
+                    links++;
+                    assertEquals(i, sparse.getRow(entry));
+                    assertEquals(j, sparse.getColumn(entry));
+                    assertEquals(data[i][j], sparse.getValue(entry), 0.0d);
+                }
+            }
+        }
+        assertEquals(links, sparse.getEntryCount());
+        assertTrue(sparse.getEntryCount() <= dense.getEntryCount());
+        //rows, in ascending column order and without NaN
+        for (int i = 0; i < dense.getRows(); i++) {
+            int e = sparse.getRowStart(i);
+            for (int d = dense.getRowStart(i); d < dense.getRowEnd(i); d++) {
+                if (!Double.isNaN(dense.getValue(d))) {
+                    assertTrue(e < sparse.getRowEnd(i));
+                    assertEquals(i, sparse.getRow(e));
+                    assertEquals(dense.getColumn(d), sparse.getColumn(e));
+                    assertEquals(dense.getValue(d), sparse.getValue(e), 0.0d);
+                    e++;
+                }
+            }
+            assertEquals(sparse.getRowEnd(i), e);
+            assertEquals(Utils.getRowSum(data, i), Utils.getRowSum(sparse, i), 0.0d);
+            assertEquals(Utils.getRowSum(data, i), Utils.getRowSum(dense, i), 0.0d);
+            assertEquals(Utils.getRowCount(data, i), Utils.getRowCount(sparse, i), 0.0d);
+            assertEquals(Utils.getRowCount(data, i), Utils.getRowCount(dense, i), 0.0d);
+        }
+        //columns through the transposed index, in ascending row order
+        for (int j = 0; j < dense.getColumns(); j++) {
+            int p = sparse.getColumnStart(j);
+            for (int q = dense.getColumnStart(j); q < dense.getColumnEnd(j); q++) {
+                int d = dense.getColumnEntry(q);
+                assertEquals(j, dense.getColumn(d));
+                if (!Double.isNaN(dense.getValue(d))) {
+                    assertTrue(p < sparse.getColumnEnd(j));
+                    int e = sparse.getColumnEntry(p);
+                    assertEquals(j, sparse.getColumn(e));
+                    assertEquals(dense.getRow(d), sparse.getRow(e));
+                    assertEquals(dense.getValue(d), sparse.getValue(e), 0.0d);
+                    p++;
+                }
+            }
+            assertEquals(sparse.getColumnEnd(j), p);
+            assertEquals(Utils.getColumnSum(data, j), Utils.getColumnSum(sparse, j), 0.0d);
+            assertEquals(Utils.getColumnSum(data, j), Utils.getColumnSum(dense, j), 0.0d);
+            assertEquals(Utils.getColumnCount(data, j), Utils.getColumnCount(sparse, j), 0.0d);
+            assertEquals(Utils.getColumnCount(data, j), Utils.getColumnCount(dense, j), 0.0d);
+        }
+    }
+
+    @Test
+    public void testDuplicatesAreSummed() {
+        SparseMatrix matrix = new SparseMatrix.Builder(3, 3)
+                .add(1, 2, 1.5d)
+                .add(0, 0, 1.0d)
+                .add(1, 2, 2.0d)
+                .add(1, 2, 0.5d)
+                .build();
+        assertEquals(2, matrix.getEntryCount());
+        assertEquals(4.0d, matrix.get(1, 2), 0.0d);
+        assertEquals(1.0d, matrix.get(0, 0), 0.0d);
+        assertEquals(1, matrix.getRowEnd(1) - matrix.getRowStart(1));
+        assertEquals(1, matrix.getColumnEnd(2) - matrix.getColumnStart(2));
+        assertEquals(4.0d, Utils.getRowSum(matrix, 1), 0.0d);
+        assertEquals(1.0d, Utils.getColumnCount(matrix, 2), 0.0d);
+    }
+
+    @Test
+    public void testNaNIsDropped() {
+        SparseMatrix matrix = new SparseMatrix.Builder(2, 2)
+                .add(0, 1, Double.NaN)
+                .add(1, 0, 3.0d)
+                .add(1, 0, Double.NaN)
+                .build();
+        assertEquals(1, matrix.getEntryCount());
+        assertTrue(Double.isNaN(matrix.get(0, 1)));
+        assertEquals(-1, matrix.getEntry(0, 1));
+        assertEquals(3.0d, matrix.get(1, 0), 0.0d);
+        assertEquals(matrix.getRowStart(0), matrix.getRowEnd(0));
+        assertEquals(0.0d, Utils.getColumnCount(matrix, 1), 0.0d);
+    }
+
+    @Test
+    public void testUnorderedInput() {
+        //triples in descending order are sorted by row, then by column
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(4, 6, 1);
+        for (int i = 3; i >= 0; i--) {
+            for (int j = 5; j >= 0; j -= 2) {
+                builder.add(i, j, 10 * i + j);
+            }
+        }
+        SparseMatrix matrix = builder.build();
+        assertEquals(12, matrix.getEntryCount());
+        for (int e = 1; e < matrix.getEntryCount(); e++) {
+            assertTrue(matrix.getRow(e - 1) < matrix.getRow(e)
+                    || (matrix.getRow(e - 1) == matrix.getRow(e) && matrix.getColumn(e - 1) < matrix.getColumn(e)));
+        }
+        //binary search within each row, hits and misses
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 6; j++) {
+                int entry = matrix.getEntry(i, j);
+                assertEquals(j % 2 == 1, entry >= 0);
+                if (entry >= 0) {
+                    assertEquals(10 * i + j, matrix.getValue(entry), 0.0d);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testAddOutsideOfMatrix() {
+        new SparseMatrix.Builder(2, 2).add(2, 0, 1.0d);
+    }
+
+    @Test
+    public void testDenseMatrixReportsNaNEntries() {
+        double[][] data = {{1.0d, Double.NaN}, {Double.NaN, 2.0d}};
+        DenseMatrix matrix = new DenseMatrix(data);
+        assertEquals(4, matrix.getEntryCount());
+        assertEquals(-1, matrix.getEntry(0, 1));
+        assertFalse(matrix.getEntry(1, 1) < 0);
+        assertTrue(Double.isNaN(matrix.getValue(matrix.getRowStart(0) + 1)));
+    }
+}
@@ -0,0 +1,55 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.tracks;
+
+import circularlayouts.IDrawable;
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that damage reported while a painter paints is not cleared.
+ *
+ * @author Nils Hoffmann
+ */
+public class AbstractDrawableTest {
+
+    @Test
+    public void testClearAfterRead() {
+        Track<IDrawable> track = new Track<IDrawable>(new Point2D.Double(), 10, 20, Collections.<IDrawable>emptyList());
+        assertTrue(track.isDirty());
+        assertNotNull(track.getDamage());
+        track.clearDamage();
+        assertFalse(track.isDirty());
+    }
+
+    @Test
+    public void testDamageWhilePainting() {
+        Track<IDrawable> track = new Track<IDrawable>(new Point2D.Double(), 10, 20, Collections.<IDrawable>emptyList());
+        assertNotNull(track.getDamage());
+        //changed after the painter read the damage
+        track.setFill(Color.RED);
+        track.clearDamage();
+        assertTrue(track.isDirty());
+        assertNotNull(track.getDamage());
+        track.clearDamage();
+        assertFalse(track.isDirty());
+    }
+}
@@ -0,0 +1,112 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.tracks;
+
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the analytic point test of {@link AnnularSector} with the
+ * outline it paints, at random points around random sectors. The outline
+ * approximates the arcs by cubic curves, the two may only disagree close to
+ * the outline.
+ *
+ * @author Nils Hoffmann
+ */
+public class AnnularSectorTest {
+
+    private static final long SEED = 891236l;
+    private static final int SECTORS = 400;
+    private static final int POINTS = 2500;
+
+    @Test
+    public void testContainsMatchesOutline() {
+        Random rg = new Random(SEED);
+        int mismatches = 0;
+        for (int s = 0; s < SECTORS; s++) {
+            double inner = 300 * rg.nextDouble();
+            double outer = inner + 100 * rg.nextDouble();
+            //angles beyond a full turn, negative and reversed extents
+            double start = 4 * rg.nextDouble() - 2;
+            double extent = s % 10 == 0 ? 1.5d * (rg.nextDouble() - 0.5d) * 2 : (rg.nextDouble() - 0.5d);
+            AnnularSector sector = s % 2 == 0
+                    ? new AnnularSector(50, -20, inner, outer, start, start + extent)
+                    : new AnnularSector(50, -20, outer, inner, start, start + extent);
+            Path2D outline = new Path2D.Double(sector);
+            double eps = 1e-3d * Math.max(1.0d, outer);
+            for (int k = 0; k < POINTS; k++) {
+                double x = 50 + 1.1d * outer * (2 * rg.nextDouble() - 1);
+                double y = -20 + 1.1d * outer * (2 * rg.nextDouble() - 1);
+                boolean expected = outline.contains(x, y);
+                if (sector.contains(x, y) != expected) {
+                    mismatches++;
+                    assertTrue("sector " + s + " disagrees at " + x + ", " + y + " away from the outline",
+                            isNearOutline(outline, x, y, eps));
+                }
+            }
+        }
+        //a few thousandths of the points lie that close to an outline
+        assertTrue("mismatches " + mismatches, mismatches < SECTORS * POINTS / 1000);
+    }
+
+    @Test
+    public void testFullTurn() {
+        AnnularSector ring = new AnnularSector(0, 0, 10, 20, 0.25d, 1.25d);
+        assertTrue(ring.contains(15, 0));
+        assertTrue(ring.contains(-15, 0));
+        assertTrue(ring.contains(0, 15));
+        assertFalse(ring.contains(5, 0));
+        assertFalse(ring.contains(25, 0));
+    }
+
+    @Test
+    public void testAngles() {
+        //a quarter counter-clockwise on screen, y grows downwards
+        AnnularSector quarter = new AnnularSector(0, 0, 10, 20, 0.0d, 0.25d);
+        assertTrue(quarter.contains(10, -10));
+        assertFalse(quarter.contains(10, 10));
+        assertFalse(quarter.contains(-10, -10));
+        AnnularSector reversed = new AnnularSector(0, 0, 20, 10, 0.25d, 0.0d);
+        assertTrue(reversed.contains(10, -10));
+        assertFalse(reversed.contains(10, 10));
+        assertEquals(10.0d, reversed.getInnerRadius(), 0.0d);
+        assertEquals(20.0d, reversed.getOuterRadius(), 0.0d);
+        Rectangle2D bounds = quarter.getBounds2D();
+        assertTrue(bounds.contains(15, -5));
+        assertFalse(bounds.contains(-5, 5));
+    }
+
+    /**
+     * @return true, if the shape does not contain all or none of the points
+     * in the given distance around the point
+     */
+    static boolean isNearOutline(Shape shape, double x, double y, double eps) {
+        boolean inside = shape.contains(x, y);
+        for (int k = 0; k < 16; k++) {
+            double angle = k * Math.PI / 8;
+            if (shape.contains(x + eps * Math.cos(angle), y + eps * Math.sin(angle)) != inside) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,109 @@
+/* 
+ * Copyright 2015 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package circularlayouts.tracks;
+
+import java.awt.Color;
+import java.awt.geom.Path2D;
+import java.util.Random;
+import org.junit.Test;
+import static circularlayouts.tracks.AnnularSectorTest.isNearOutline;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the analytic point tests of {@link RibbonTable} with the outlines
+ * it paints, at random points around random ribbons.
+ *
+ * @author Nils Hoffmann
+ */
+public class RibbonTableTest {
+
+    private static final long SEED = 891236l;
+    private static final int RIBBONS = 400;
+    private static final int POINTS = 2500;
+
+    @Test
+    public void testContainsMatchesOutline() {
+        Random rg = new Random(SEED);
+        RibbonTable table = createTable(rg, false);
+        int mismatches = 0;
+        for (int i = 0; i < table.size(); i++) {
+            Path2D outline = table.getShape(i);
+            double eps = 1e-3d * 200;
+            for (int k = 0; k < POINTS; k++) {
+                double x = 10 + 220 * (2 * rg.nextDouble() - 1);
+                double y = 20 + 220 * (2 * rg.nextDouble() - 1);
+                boolean expected = outline.contains(x, y);
+                if (expected) {
+                    assertTrue("ribbon " + i + " bounds miss " + x + ", " + y, table.boundsContain(i, x, y));
+                }
+                if (table.contains(i, x, y) != expected) {
+                    mismatches++;
+                    assertTrue("ribbon " + i + " disagrees at " + x + ", " + y + " away from the outline",
+                            isNearOutline(outline, x, y, eps));
+                }
+            }
+        }
+        assertTrue("mismatches " + mismatches, mismatches < RIBBONS * POINTS / 1000);
+    }
+
+    @Test
+    public void testConnectorContainsMatchesOutline() {
+        Random rg = new Random(SEED);
+        RibbonTable table = createTable(rg, true);
+        int mismatches = 0;
+        for (int i = 0; i < table.size(); i++) {
+            Path2D connector = new Path2D.Double(table.getConnector(i));
+            Path2D outline = table.getShape(i);
+            double eps = 1e-3d * 220;
+            for (int k = 0; k < POINTS; k++) {
+                double x = 10 + 230 * (2 * rg.nextDouble() - 1);
+                double y = 20 + 230 * (2 * rg.nextDouble() - 1);
+                boolean expected = connector.contains(x, y);
+                if (expected || outline.contains(x, y)) {
+                    assertTrue("ribbon " + i + " bounds miss " + x + ", " + y, table.boundsContain(i, x, y));
+                }
+                if (table.connectorContains(i, x, y) != expected) {
+                    mismatches++;
+                    assertTrue("connector " + i + " disagrees at " + x + ", " + y + " away from the outline",
+                            isNearOutline(connector, x, y, eps));
+                }
+            }
+        }
+        assertTrue("mismatches " + mismatches, mismatches < RIBBONS * POINTS / 1000);
+    }
+
+    /**
+     * Creates ribbons between random, disjoint source and target arcs.
+     */
+    private static RibbonTable createTable(Random rg, boolean connectors) {
+        RibbonTable table = connectors
+                ? new RibbonTable(RIBBONS, 10, 20, 190, 195, 200, 215)
+                : new RibbonTable(RIBBONS, 10, 20, 190, 195);
+        for (int i = 0; i < RIBBONS; i++) {
+            double sourceStart = rg.nextDouble();
+            double sourceWidth = 0.2d * rg.nextDouble();
+            double targetWidth = 0.2d * rg.nextDouble();
+            //the target follows the source after a gap, wrapping around
+            double gap = (1.0d - sourceWidth - targetWidth) * rg.nextDouble();
+            double targetStart = sourceStart + sourceWidth + gap;
+            if (targetStart >= 1.0d) {
+                targetStart -= 1.0d;
+            }
+            table.set(i, sourceStart, sourceStart + sourceWidth, targetStart, targetStart + targetWidth, Color.RED, Color.BLACK);
+        }
+        return table;
+    }
+}